@@ -40,7 +40,22 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
 @Documented
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface ServiceProviderFor {
     Class<?>[] value();
+
+    /**
+     * Name of the provider, recorded in the index so that providers can be selected without loading them.
+     */
+    String name() default "";
+
+    /**
+     * Priority of the provider, recorded in the index. Higher values come first.
+     */
+    int priority() default 0;
+
+    /**
+     * Free-form qualifiers of the provider, recorded in the index.
+     */
+    String[] qualifiers() default {};
 }
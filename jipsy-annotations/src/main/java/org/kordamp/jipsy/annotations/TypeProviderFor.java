@@ -28,7 +28,22 @@ import java.lang.annotation.Target;
  */
 @Documented
 @Target(ElementType.TYPE)
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface TypeProviderFor {
     Class<?> value();
+
+    /**
+     * Name of the provider, recorded in the index so that providers can be selected without loading them.
+     */
+    String name() default "";
+
+    /**
+     * Priority of the provider, recorded in the index. Higher values come first.
+     */
+    int priority() default 0;
+
+    /**
+     * Free-form qualifiers of the provider, recorded in the index.
+     */
+    String[] qualifiers() default {};
 }
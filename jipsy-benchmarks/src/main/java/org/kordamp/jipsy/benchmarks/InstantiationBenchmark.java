@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.benchmarks;
+
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+import org.kordamp.jipsy.util.ProviderSuppliers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Creating a provider instance from its resolved class, through {@code ProviderSuppliers} compared to reflection.
+ * <p>
+ * With {@code same}, the provider class is visible to the class loader of {@code jipsy-util}, and suppliers are
+ * generated through {@code LambdaMetafactory}. With {@code child}, the provider class lives in a class loader of its
+ * own, as in plugin or application server setups, and suppliers invoke a method handle. {@code constructor} is the
+ * baseline of a plain {@code new}. Run with {@code -prof gc} to see allocations beyond the provider itself.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstantiationBenchmark {
+    private static final String PROVIDER = "bench.instances.Provider";
+
+    @Param({"same", "child"})
+    public String loader;
+
+    private File baseDir;
+    private URLClassLoader childLoader;
+    private Class<?> type;
+    private Constructor<?> constructor;
+    private Supplier<?> supplier;
+
+    public static class Provider implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void resolveProvider() throws Exception {
+        if ("child".equals(loader)) {
+            baseDir = Files.createTempDirectory("jipsy-instantiation").toFile();
+            childLoader = new URLClassLoader(new URL[]{compileProvider(baseDir)}, getClass().getClassLoader());
+            type = Class.forName(PROVIDER, true, childLoader);
+        } else {
+            type = Provider.class;
+        }
+        constructor = type.getConstructor();
+        supplier = ProviderSuppliers.of(type);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProvider() throws IOException {
+        if (childLoader != null) {
+            childLoader.close();
+            ProcessorBenchmark.delete(baseDir);
+        }
+    }
+
+    /**
+     * Looks the constructor up on every call, as {@code ServiceLoader} style code usually does.
+     */
+    @Benchmark
+    public Object reflection() throws ReflectiveOperationException {
+        return type.getDeclaredConstructor().newInstance();
+    }
+
+    @Benchmark
+    public Object reflectionCachedConstructor() throws ReflectiveOperationException {
+        return constructor.newInstance();
+    }
+
+    /**
+     * Includes the lookup of the cached supplier.
+     */
+    @Benchmark
+    public Object providerSuppliers() {
+        return ProviderSuppliers.of(type).get();
+    }
+
+    @Benchmark
+    public Object providerSuppliersHeldSupplier() {
+        return supplier.get();
+    }
+
+    @Benchmark
+    public Object constructor() {
+        return new Provider();
+    }
+
+    private static URL compileProvider(File dir) throws IOException {
+        int dot = PROVIDER.lastIndexOf('.');
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(Collections.emptyList(),
+            Arrays.asList("-d", dir.getPath(), "-proc:none"), null, Collections.singletonList(TestJavaFileObject.create(PROVIDER.replace('.', '/'),
+                "package " + PROVIDER.substring(0, dot) + ";\n\npublic class " + PROVIDER.substring(dot + 1) +
+                    " implements Runnable {\n    public void run() { }\n}\n")));
+        if (!diagnostics.isEmpty()) {
+            throw new IllegalStateException(diagnostics.toString());
+        }
+        return dir.toURI().toURL();
+    }
+}
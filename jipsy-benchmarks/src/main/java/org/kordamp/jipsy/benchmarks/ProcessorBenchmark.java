@@ -0,0 +1,149 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.benchmarks;
+
+import org.kordamp.jipsy.processor.JipsyProcessor;
+import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
+import org.kordamp.jipsy.processor.sisu.SisuIndexProviderProcessor;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.type.TypeProviderProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles synthetic source trees in-process with and without the jipsy processors. The difference between the
+ * {@code none} results and the others is the overhead of the processors. Run with {@code -prof gc} to also see
+ * the allocations they add.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class ProcessorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int classes;
+
+    @Param({"1", "10", "50"})
+    public int providerPercentage;
+
+    /**
+     * {@code none}, a single processor, all three processors side by side ({@code all}), or the combined
+     * {@code jipsy} processor.
+     */
+    @Param({"none", "service", "type", "sisu", "all", "jipsy"})
+    public String processors;
+
+    private List<JavaFileObject> sources;
+    private File outputDir;
+
+    @Setup(Level.Trial)
+    public void generateSources() {
+        sources = SourceTreeGenerator.generate(classes, providerPercentage);
+    }
+
+    @Setup(Level.Iteration)
+    public void createOutputDir() throws IOException {
+        // each compilation starts from a clean output, as a full build would
+        outputDir = Files.createTempDirectory("jipsy-benchmark").toFile();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutputDir() {
+        delete(outputDir);
+    }
+
+    @Benchmark
+    public int compile() {
+        List<String> options = new ArrayList<String>(Arrays.asList(
+            "-d", outputDir.getPath(),
+            "-classpath", System.getProperty("java.class.path"),
+            "-nowarn"));
+        List<Processor> selected = createProcessors();
+        if (selected.isEmpty()) {
+            options.add("-proc:none");
+        }
+
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(selected, options, null, sources);
+        for (Diagnostic<JavaFileObject> diagnostic : diagnostics) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                // a failed compilation would not measure anything meaningful
+                throw new IllegalStateException(diagnostic.toString());
+            }
+        }
+        return diagnostics.size();
+    }
+
+    private List<Processor> createProcessors() {
+        switch (processors) {
+            case "none":
+                return Collections.emptyList();
+            case "service":
+                return Collections.<Processor>singletonList(new ServiceProviderProcessor());
+            case "type":
+                return Collections.<Processor>singletonList(new TypeProviderProcessor());
+            case "sisu":
+                return Collections.<Processor>singletonList(new SisuIndexProviderProcessor());
+            case "all":
+                return Arrays.<Processor>asList(new ServiceProviderProcessor(), new TypeProviderProcessor(), new SisuIndexProviderProcessor());
+            case "jipsy":
+                return Collections.<Processor>singletonList(new JipsyProcessor());
+            default:
+                throw new IllegalArgumentException("Unknown processors: " + processors);
+        }
+    }
+
+    static void delete(File file) {
+        if (file == null) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
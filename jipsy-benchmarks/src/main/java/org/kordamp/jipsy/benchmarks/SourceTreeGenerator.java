@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.benchmarks;
+
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic source trees for the processor benchmarks.
+ * <p>
+ * Classes are spread over packages of {@value #CLASSES_PER_PACKAGE}. A given percentage of them are providers,
+ * annotated with all jipsy annotations for one of {@value #SERVICES} service interfaces, the others are plain
+ * classes of a similar size.
+ *
+ * @author Andres Almiray
+ */
+public final class SourceTreeGenerator {
+    public static final int CLASSES_PER_PACKAGE = 100;
+    public static final int SERVICES = 10;
+
+    private static final String API_PACKAGE = "bench.api";
+
+    private SourceTreeGenerator() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static List<JavaFileObject> generate(int classes, int providerPercentage) {
+        if (classes < 0) {
+            throw new IllegalArgumentException("classes must not be negative");
+        }
+        if (providerPercentage < 0 || providerPercentage > 100) {
+            throw new IllegalArgumentException("providerPercentage must be between 0 and 100");
+        }
+
+        List<JavaFileObject> sources = new ArrayList<JavaFileObject>(classes + SERVICES);
+        for (int i = 0; i < SERVICES; i++) {
+            sources.add(TestJavaFileObject.create(path(API_PACKAGE, "Service" + i),
+                "package " + API_PACKAGE + ";\n\npublic interface Service" + i + " {\n    String name();\n}\n"));
+        }
+
+        int providers = 0;
+        for (int i = 0; i < classes; i++) {
+            String packageName = "bench.p" + (i / CLASSES_PER_PACKAGE);
+            String className = "C" + i;
+            // spread providers evenly instead of bunching them in the first packages
+            boolean provider = (long) (i + 1) * providerPercentage / 100 > providers;
+            if (provider) {
+                providers++;
+                sources.add(TestJavaFileObject.create(path(packageName, className), provider(packageName, className, i % SERVICES)));
+            } else {
+                sources.add(TestJavaFileObject.create(path(packageName, className), plain(packageName, className)));
+            }
+        }
+        return sources;
+    }
+
+    private static String provider(String packageName, String className, int service) {
+        String serviceName = API_PACKAGE + ".Service" + service;
+        return "package " + packageName + ";\n\n" +
+            "@org.kordamp.jipsy.annotations.ServiceProviderFor(" + serviceName + ".class)\n" +
+            "@org.kordamp.jipsy.annotations.TypeProviderFor(" + serviceName + ".class)\n" +
+            "@org.kordamp.jipsy.annotations.SisuIndexFor(" + serviceName + ".class)\n" +
+            "public class " + className + " implements " + serviceName + " {\n" +
+            "    public String name() {\n" +
+            "        return \"" + className + "\";\n" +
+            "    }\n" +
+            "}\n";
+    }
+
+    private static String plain(String packageName, String className) {
+        return "package " + packageName + ";\n\n" +
+            "public class " + className + " {\n" +
+            "    public String name() {\n" +
+            "        return \"" + className + "\";\n" +
+            "    }\n" +
+            "}\n";
+    }
+
+    private static String path(String packageName, String className) {
+        return packageName.replace('.', '/') + "/" + className;
+    }
+}
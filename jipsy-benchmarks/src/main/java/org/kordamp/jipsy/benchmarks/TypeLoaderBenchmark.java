@@ -0,0 +1,310 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.benchmarks;
+
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+import org.kordamp.jipsy.util.TypeLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Runtime discovery with {@code TypeLoader} compared to {@code java.util.ServiceLoader}, on the same generated
+ * {@code META-INF/services/java.lang.Runnable} files.
+ * <p>
+ * The classpath has {@code roots} directories or jars, each with an index file of {@code entries} lines and as
+ * many other resources. All index files list the same {@code entries} provider classes, which live in a separate
+ * directory. {@code cold} uses a new class loader for every invocation, {@code warm} reuses one; jar files opened
+ * through {@code jar:} URLs stay cached by the JDK in both cases. Run with
+ * {@code -prof gc} to see allocations; divide {@code gc.alloc.rate.norm} by {@code roots * entries} for the
+ * allocation per line.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeLoaderBenchmark {
+    private static final String PATH = "META-INF/services";
+    private static final String INDEX = PATH + "/" + Runnable.class.getName();
+    private static final String PROVIDER_PACKAGE = "bench.providers";
+
+    @Param({"directories", "jars"})
+    public String layout;
+
+    @Param({"1", "10", "100"})
+    public int roots;
+
+    /**
+     * Lines per index file: small and large indexes.
+     */
+    @Param({"10", "1000"})
+    public int entries;
+
+    @Param({"warm", "cold"})
+    public String loader;
+
+    private File baseDir;
+    private URL[] urls;
+    private URLClassLoader warmLoader;
+    private URLClassLoader classLoader;
+    private final TypeLoader typeLoader = new TypeLoader();
+
+    @Setup(Level.Trial)
+    public void generateClasspath() throws IOException {
+        baseDir = Files.createTempDirectory("jipsy-typeloader").toFile();
+        List<URL> result = new ArrayList<URL>();
+        result.add(compileProviders(new File(baseDir, "providers")));
+
+        String index = index(entries);
+        for (int i = 0; i < roots; i++) {
+            File root = new File(baseDir, "root" + i);
+            if ("jars".equals(layout)) {
+                File jar = new File(root.getPath() + ".jar");
+                writeJar(jar, i, index);
+                result.add(jar.toURI().toURL());
+            } else {
+                writeDirectory(root, i, index);
+                result.add(root.toURI().toURL());
+            }
+        }
+        urls = result.toArray(new URL[0]);
+        warmLoader = new URLClassLoader(urls, getClass().getClassLoader());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteClasspath() throws IOException {
+        warmLoader.close();
+        ProcessorBenchmark.delete(baseDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareLoader() {
+        classLoader = "cold".equals(loader) ? new URLClassLoader(urls, getClass().getClassLoader()) : warmLoader;
+    }
+
+    @TearDown(Level.Invocation)
+    public void releaseLoader() throws IOException {
+        if (classLoader != warmLoader) {
+            classLoader.close();
+        }
+    }
+
+    /**
+     * Reads every line of every index file without doing anything with it.
+     */
+    @Benchmark
+    public boolean typeLoaderLines(final Blackhole blackhole) {
+        return TypeLoader.load(classLoader, PATH, Runnable.class, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                blackhole.consume(line);
+            }
+        });
+    }
+
+    /**
+     * Looks up the first entry only, through the lazy stream that reads a single index file to find it.
+     */
+    @Benchmark
+    public Object typeLoaderStreamFirst() {
+        return TypeLoader.stream(classLoader, PATH, Runnable.class).findFirst().orElse(null);
+    }
+
+    /**
+     * Same as {@link #typeLoaderLines(Blackhole)}, reading the index files in parallel on the common fork-join pool.
+     */
+    @Benchmark
+    public boolean typeLoaderParallel(final Blackhole blackhole) {
+        return TypeLoader.load(classLoader, PATH, Runnable.class, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                blackhole.consume(line);
+            }
+        }, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #typeLoaderLines(Blackhole)}, through a {@code TypeLoader} instance that caches the entries per
+     * class loader. Warm loaders hit the cache after the first invocation, cold loaders always miss.
+     */
+    @Benchmark
+    public boolean typeLoaderCached(final Blackhole blackhole) {
+        return typeLoader.process(classLoader, PATH, Runnable.class, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                blackhole.consume(line);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #typeLoaderLines(Blackhole)}, consuming the reused {@code CharSequence} without creating strings.
+     */
+    @Benchmark
+    public boolean typeLoaderSequences(final Blackhole blackhole) {
+        return TypeLoader.loadSequences(classLoader, PATH, Runnable.class, new TypeLoader.LineSequenceProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, CharSequence line) {
+                blackhole.consume(line.length());
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #typeLoaderLines(Blackhole)}, through the overload that walks all resources below the path.
+     */
+    @Benchmark
+    public boolean typeLoaderResources(final Blackhole blackhole) {
+        return TypeLoader.load(classLoader, PATH, new TypeLoader.PathFilter() {
+            @Override
+            public boolean accept(String path) {
+                return path.endsWith(Runnable.class.getName());
+            }
+        }, new TypeLoader.ResourceProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, String line) {
+                blackhole.consume(line);
+            }
+        });
+    }
+
+    /**
+     * Loads and instantiates the listed providers, which is what {@code ServiceLoader} does.
+     */
+    @Benchmark
+    public boolean typeLoaderInstances(final Blackhole blackhole) {
+        return TypeLoader.load(classLoader, PATH, Runnable.class, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                try {
+                    blackhole.consume(Class.forName(line.trim(), true, classLoader).newInstance());
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Note that {@code ServiceLoader} instantiates each provider once even if several files list it.
+     */
+    @Benchmark
+    public void serviceLoader(Blackhole blackhole) {
+        for (Runnable runnable : ServiceLoader.load(Runnable.class, classLoader)) {
+            blackhole.consume(runnable);
+        }
+    }
+
+    private URL compileProviders(File dir) throws IOException {
+        if (!dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        List<JavaFileObject> sources = new ArrayList<JavaFileObject>(entries);
+        for (int i = 0; i < entries; i++) {
+            sources.add(TestJavaFileObject.create(PROVIDER_PACKAGE.replace('.', '/') + "/P" + i,
+                "package " + PROVIDER_PACKAGE + ";\n\npublic class P" + i + " implements Runnable {\n    public void run() { }\n}\n"));
+        }
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(Collections.emptyList(),
+            Arrays.asList("-d", dir.getPath(), "-proc:none"), null, sources);
+        if (!diagnostics.isEmpty()) {
+            throw new IllegalStateException(diagnostics.toString());
+        }
+        return dir.toURI().toURL();
+    }
+
+    private static String index(int entries) {
+        StringBuilder index = new StringBuilder("# Generated by " + TypeLoaderBenchmark.class.getName() + "\n");
+        for (int i = 0; i < entries; i++) {
+            index.append(PROVIDER_PACKAGE).append(".P").append(i).append("\n");
+        }
+        return index.toString();
+    }
+
+    private void writeDirectory(File root, int number, String index) throws IOException {
+        write(new File(root, INDEX), index);
+        for (int i = 0; i < entries; i++) {
+            write(new File(root, filler(number, i)), "filler");
+        }
+    }
+
+    private void writeJar(File jar, int number, String index) throws IOException {
+        jar.getParentFile().mkdirs();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            // directory entries, as written by the jar tool, let class loaders find PATH itself
+            for (String dir : Arrays.asList("META-INF/", PATH + "/", "bench/", "bench/root" + number + "/")) {
+                out.putNextEntry(new JarEntry(dir));
+                out.closeEntry();
+            }
+            out.putNextEntry(new JarEntry(INDEX));
+            out.write(index.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            for (int i = 0; i < entries; i++) {
+                out.putNextEntry(new JarEntry(filler(number, i)));
+                out.write("filler".getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static String filler(int root, int number) {
+        return "bench/root" + root + "/filler" + number + ".txt";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,485 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * All index files of a module in a single resource, {@code META-INF/jipsy/index.bin}, so that they can be looked up
+ * with one resource read instead of one per index file.
+ * <p>
+ * The index is made of sections, one per index directory such as {@code META-INF/services/}, each listing the index
+ * files of that directory with their providers and attributes, along with the size and CRC32 of the file they were
+ * taken from. Names are stored once in a string table and referenced by position; sections and entries are sorted,
+ * so that lookups are binary searches over offset tables. The layout, big-endian, followed by the CRC32 of
+ * everything before it:
+ * <pre>
+ * magic, version
+ * string count, then per string: UTF-8 length, UTF-8 bytes
+ * section count, then per section: path string, first entry
+ * entry count, then per entry: name string, first provider, file size, file CRC32
+ * provider count, then per provider: provider string, attributes string
+ * </pre>
+ * The index only stands for the files it {@link #matches matches}: a file missing from the index, or changed after
+ * the index was written, e.g. merged by a shading plugin, has to be read instead. An index without sections covers
+ * nothing, and is written to supersede an index that should no longer be used.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @author Andres Almiray
+ */
+public final class BinaryIndex {
+    public static final String RESOURCE_NAME = "META-INF/jipsy/index.bin";
+
+    private static final int MAGIC = 0x4a505358;
+    private static final int VERSION = 2;
+
+    private final String[] strings;
+    // section i spans entries sectionStarts[i] until sectionStarts[i + 1]
+    private final int[] sectionPaths;
+    private final int[] sectionStarts;
+    // entry i spans providers entryStarts[i] until entryStarts[i + 1]
+    private final int[] entryNames;
+    private final int[] entryStarts;
+    private final long[] entrySizes;
+    private final long[] entryChecksums;
+    private final int[] providers;
+    private final int[] attributes;
+
+    private BinaryIndex(String[] strings, int[] sectionPaths, int[] sectionStarts, int[] entryNames, int[] entryStarts,
+                        long[] entrySizes, long[] entryChecksums, int[] providers, int[] attributes) {
+        this.strings = strings;
+        this.sectionPaths = sectionPaths;
+        this.sectionStarts = sectionStarts;
+        this.entryNames = entryNames;
+        this.entryStarts = entryStarts;
+        this.entrySizes = entrySizes;
+        this.entryChecksums = entryChecksums;
+        this.providers = providers;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Whether this index lists the index files of {@code path}, with or without a trailing {@code /}.
+     */
+    public boolean covers(String path) {
+        return section(normalize(path)) >= 0;
+    }
+
+    /**
+     * Returns the directories covered by this index, in sorted order, each with a trailing {@code /}.
+     */
+    public List<String> paths() {
+        return strings(sectionPaths, 0, sectionPaths.length);
+    }
+
+    /**
+     * Returns the names of the index files of {@code path}, in sorted order, or an empty list if {@code path} is not
+     * covered.
+     */
+    public List<String> names(String path) {
+        int section = section(normalize(path));
+        if (section < 0) {
+            return Collections.emptyList();
+        }
+        return strings(entryNames, sectionStarts[section], sectionStarts[section + 1]);
+    }
+
+    /**
+     * Whether the index file {@code name} of {@code path} is listed with {@code size} bytes and, unless {@code crc}
+     * is negative, with that CRC32. Only then do {@link #get} and {@link #getAttributes} stand for the file.
+     */
+    public boolean matches(String path, String name, long size, long crc) {
+        int entry = entry(path, name);
+        return entry >= 0 && entrySizes[entry] == size && (crc < 0 || entryChecksums[entry] == crc);
+    }
+
+    /**
+     * Returns the providers listed in the index file {@code name} of {@code path}, in file order, or {@code null} if
+     * the index does not list that file.
+     */
+    public List<String> get(String path, String name) {
+        int entry = entry(path, name);
+        return entry < 0 ? null : strings(providers, entryStarts[entry], entryStarts[entry + 1]);
+    }
+
+    /**
+     * Returns the attributes of the providers returned by {@link #get}, in the same order, or {@code null} if the
+     * index does not list that file.
+     */
+    public List<ProviderAttributes> getAttributes(String path, String name) {
+        int entry = entry(path, name);
+        if (entry < 0) {
+            return null;
+        }
+        final List<String> list = strings(attributes, entryStarts[entry], entryStarts[entry + 1]);
+        return new AbstractList<ProviderAttributes>() {
+            @Override
+            public ProviderAttributes get(int index) {
+                String value = list.get(index);
+                return value.isEmpty() ? ProviderAttributes.NONE : ProviderAttributes.parse(value);
+            }
+
+            @Override
+            public int size() {
+                return list.size();
+            }
+        };
+    }
+
+    private int entry(String path, String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        int section = section(normalize(path));
+        if (section < 0) {
+            return -1;
+        }
+        return search(entryNames, sectionStarts[section], sectionStarts[section + 1], name);
+    }
+
+    private int section(String path) {
+        return search(sectionPaths, 0, sectionPaths.length, path);
+    }
+
+    private int search(int[] references, int from, int to, String s) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            int comparison = strings[references[middle]].compareTo(s);
+            if (comparison < 0) {
+                from = middle + 1;
+            } else if (comparison > 0) {
+                to = middle;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private List<String> strings(final int[] references, final int from, final int to) {
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= to - from) {
+                    throw new IndexOutOfBoundsException("index: " + index);
+                }
+                return strings[references[from + index]];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return paths().toString();
+    }
+
+    /**
+     * Reads an index from the remaining bytes of {@code buffer}, which may be memory-mapped. Strings are decoded
+     * while reading, the buffer is not referenced afterwards.
+     *
+     * @throws IOException if the input is not an index of this version or is corrupted
+     */
+    public static BinaryIndex read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice();
+        if (in.remaining() < 8) {
+            throw new IOException("Corrupted index");
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = in.duplicate();
+        checked.limit(in.limit() - 8);
+        if (checked.hasArray()) {
+            crc.update(checked.array(), checked.arrayOffset() + checked.position(), checked.remaining());
+        } else {
+            byte[] chunk = new byte[Math.min(checked.remaining(), 8192)];
+            while (checked.hasRemaining()) {
+                int length = Math.min(chunk.length, checked.remaining());
+                checked.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+        if (in.getLong(in.limit() - 8) != crc.getValue()) {
+            throw new IOException("Corrupted index");
+        }
+        in.limit(in.limit() - 8);
+
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an index");
+            }
+            if (in.getInt() != VERSION) {
+                throw new IOException("Unsupported index version");
+            }
+
+            String[] strings = new String[count(in)];
+            for (int i = 0; i < strings.length; i++) {
+                int length = count(in);
+                if (length > in.remaining()) {
+                    throw new IOException("Corrupted index");
+                }
+                ByteBuffer bytes = in.slice();
+                bytes.limit(length);
+                strings[i] = StandardCharsets.UTF_8.decode(bytes).toString();
+                in.position(in.position() + length);
+            }
+
+            int sections = count(in);
+            int[] sectionPaths = new int[sections];
+            int[] sectionStarts = new int[sections + 1];
+            for (int i = 0; i < sections; i++) {
+                sectionPaths[i] = reference(in, strings.length);
+                sectionStarts[i] = count(in);
+            }
+
+            int entries = count(in);
+            int[] entryNames = new int[entries];
+            int[] entryStarts = new int[entries + 1];
+            long[] entrySizes = new long[entries];
+            long[] entryChecksums = new long[entries];
+            for (int i = 0; i < entries; i++) {
+                entryNames[i] = reference(in, strings.length);
+                entryStarts[i] = count(in);
+                entrySizes[i] = in.getLong();
+                entryChecksums[i] = in.getLong();
+            }
+            sectionStarts[sections] = entries;
+
+            int[] providers = new int[count(in)];
+            int[] attributes = new int[providers.length];
+            for (int i = 0; i < providers.length; i++) {
+                providers[i] = reference(in, strings.length);
+                attributes[i] = reference(in, strings.length);
+            }
+            entryStarts[entries] = providers.length;
+
+            if (in.hasRemaining()) {
+                throw new IOException("Corrupted index");
+            }
+            checkOffsets(sectionStarts);
+            checkOffsets(entryStarts);
+            return new BinaryIndex(strings, sectionPaths, sectionStarts, entryNames, entryStarts, entrySizes,
+                entryChecksums, providers, attributes);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupted index", e);
+        }
+    }
+
+    /**
+     * Reads an index from the remaining content of {@code in}. The stream is not closed.
+     *
+     * @throws IOException if the input is not an index of this version or is corrupted
+     */
+    public static BinaryIndex read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            bytes.write(chunk, 0, read);
+        }
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static void checkOffsets(int[] starts) throws IOException {
+        for (int i = 1; i < starts.length; i++) {
+            if (starts[i - 1] > starts[i]) {
+                throw new IOException("Corrupted index");
+            }
+        }
+    }
+
+    private static int count(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count < 0) {
+            throw new IOException("Corrupted index");
+        }
+        return count;
+    }
+
+    private static int reference(ByteBuffer in, int strings) throws IOException {
+        int reference = in.getInt();
+        if (reference < 0 || reference >= strings) {
+            throw new IOException("Corrupted index");
+        }
+        return reference;
+    }
+
+    private static String normalize(String path) {
+        if (path == null) {
+            throw new NullPointerException("path");
+        }
+        return path.endsWith("/") ? path : path + "/";
+    }
+
+    /**
+     * Collects the sections of an index and writes it.
+     * <p>
+     * Not thread safe.
+     */
+    public static final class Builder {
+        private final Map<String, Map<String, Listing>> sections = new TreeMap<String, Map<String, Listing>>();
+
+        /**
+         * Declares {@code path} as covered by the index, even if no index files are added to it.
+         */
+        public Builder section(String path) {
+            String section = normalize(path);
+            if (!sections.containsKey(section)) {
+                sections.put(section, new TreeMap<String, Listing>());
+            }
+            return this;
+        }
+
+        /**
+         * Adds the index file {@code name} of {@code path}, given its {@code content} exactly as written. Providers
+         * and their attributes are parsed from it, and its size and CRC32 recorded once encoded as UTF-8. Replaces
+         * any file added before under the same name.
+         */
+        public Builder add(String path, String name, CharSequence content) {
+            if (name == null) {
+                throw new NullPointerException("name");
+            }
+            if (content == null) {
+                throw new NullPointerException("content");
+            }
+            final Listing listing = new Listing();
+            new IndexReader().read(content, new IndexReader.AttributedEntryHandler() {
+                @Override
+                public void entry(CharSequence entry, CharSequence attributes) {
+                    listing.providers.add(entry.toString());
+                    listing.attributes.add(attributes != null ? attributes.toString() : "");
+                }
+            });
+            byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            listing.size = bytes.length;
+            listing.crc = crc.getValue();
+
+            section(path);
+            sections.get(normalize(path)).put(name, listing);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return sections.isEmpty();
+        }
+
+        /**
+         * Writes the index. The stream is flushed, not closed.
+         *
+         * @return the number of bytes written
+         */
+        public long write(OutputStream out) throws IOException {
+            Map<String, Integer> references = new HashMap<String, Integer>();
+            ByteArrayOutputStream strings = new ByteArrayOutputStream();
+            ByteArrayOutputStream tables = new ByteArrayOutputStream();
+            DataOutputStream stringData = new DataOutputStream(strings);
+            DataOutputStream tableData = new DataOutputStream(tables);
+
+            int entries = 0;
+            tableData.writeInt(sections.size());
+            for (Map.Entry<String, Map<String, Listing>> section : sections.entrySet()) {
+                tableData.writeInt(reference(references, stringData, section.getKey()));
+                tableData.writeInt(entries);
+                entries += section.getValue().size();
+            }
+
+            int providers = 0;
+            tableData.writeInt(entries);
+            for (Map<String, Listing> section : sections.values()) {
+                for (Map.Entry<String, Listing> entry : section.entrySet()) {
+                    tableData.writeInt(reference(references, stringData, entry.getKey()));
+                    tableData.writeInt(providers);
+                    tableData.writeLong(entry.getValue().size);
+                    tableData.writeLong(entry.getValue().crc);
+                    providers += entry.getValue().providers.size();
+                }
+            }
+
+            tableData.writeInt(providers);
+            for (Map<String, Listing> section : sections.values()) {
+                for (Listing listing : section.values()) {
+                    for (int i = 0; i < listing.providers.size(); i++) {
+                        tableData.writeInt(reference(references, stringData, listing.providers.get(i)));
+                        tableData.writeInt(reference(references, stringData, listing.attributes.get(i)));
+                    }
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(references.size());
+            strings.writeTo(data);
+            tables.writeTo(data);
+            data.flush();
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            data.writeLong(crc.getValue());
+            data.flush();
+            bytes.writeTo(out);
+            out.flush();
+            return bytes.size();
+        }
+
+        private static int reference(Map<String, Integer> references, DataOutputStream strings, String s) throws IOException {
+            Integer reference = references.get(s);
+            if (reference == null) {
+                reference = references.size();
+                references.put(s, reference);
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                strings.writeInt(bytes.length);
+                strings.write(bytes);
+            }
+            return reference;
+        }
+    }
+
+    // an index file: its providers, their attributes or "" if they have none, its size and CRC32
+    private static final class Listing {
+        private final List<String> providers = new ArrayList<String>();
+        private final List<String> attributes = new ArrayList<String>();
+        private long size;
+        private long crc;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Reads index files such as {@code META-INF/services/*} or {@code META-INF/types/*}: one entry per line, with
+ * everything following a {@code #} being a comment and surrounding whitespace being ignored. This is the format
+ * described by {@code java.util.ServiceLoader}.
+ * <p>
+ * Input is decoded straight into a reusable character buffer, and each entry is handed to the {@link EntryHandler}
+ * as a {@code CharSequence}. No objects are allocated per line; the buffers only grow to fit the longest line seen.
+ * The {@code CharSequence} is only valid during the callback, call {@code toString()} to keep it. Lines are
+ * terminated by {@code \n}, {@code \r\n} or {@code \r}. Streams are decoded as UTF-8, malformed input is replaced
+ * with {@code U+FFFD}.
+ * <p>
+ * {@link #readLines(InputStream, EntryHandler)} reads arbitrary text resources instead, handing over lines as they
+ * are.
+ * <p>
+ * An {@link AttributedEntryHandler} also receives the comment following an entry when it starts with {@code #@},
+ * which holds the entry's {@link ProviderAttributes}.
+ * <p>
+ * Instances are not thread safe, but may be reused for any number of inputs.
+ *
+ * @author Andres Almiray
+ */
+public final class IndexReader {
+    public static final char COMMENT = '#';
+    public static final char ATTRIBUTES = '@';
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final int bufferSize;
+    private byte[] bytes;
+    private char[] chars;
+    private final Line line = new Line();
+    private final Line comment = new Line();
+
+    // decoder state, kept across buffer boundaries
+    private int pending;
+    private int codePoint;
+    private int minimum;
+    private boolean skipLineFeed;
+    private boolean inComment;
+    private boolean attributed;
+    private boolean raw;
+
+    public IndexReader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public IndexReader(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns the entry on a single line, or {@code null} if the line is blank or a comment.
+     */
+    public static String parseEntry(String line) {
+        if (line == null) {
+            throw new NullPointerException("line");
+        }
+        int end = line.indexOf(COMMENT);
+        if (end < 0) {
+            end = line.length();
+        }
+        int start = 0;
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return start == end ? null : line.substring(start, end);
+    }
+
+    /**
+     * Returns the attributes recorded on a single line, or {@code null} if there are none.
+     *
+     * @see ProviderAttributes#parse(CharSequence)
+     */
+    public static String parseAttributes(String line) {
+        if (line == null) {
+            throw new NullPointerException("line");
+        }
+        int start = line.indexOf(COMMENT);
+        if (start < 0 || start + 1 >= line.length() || line.charAt(start + 1) != ATTRIBUTES) {
+            return null;
+        }
+        String attributes = line.substring(start + 2).trim();
+        return attributes.isEmpty() ? null : attributes;
+    }
+
+    /**
+     * Hands every entry of the UTF-8 encoded {@code in} to {@code handler}. The stream is not closed.
+     */
+    public void read(InputStream in, EntryHandler handler) throws IOException {
+        if (bytes == null) {
+            bytes = new byte[bufferSize];
+        }
+        reset();
+        attributed = handler instanceof AttributedEntryHandler;
+        try {
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    decode(bytes[i] & 0xFF, handler);
+                }
+            }
+            if (pending > 0) {
+                pending = 0;
+                append(REPLACEMENT);
+            }
+            endLine(handler);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Hands every line of the UTF-8 encoded {@code in} to {@code handler} as it is, without its line terminator.
+     * Only blank lines and lines starting with {@code #} are skipped; whitespace and {@code #} elsewhere are kept.
+     * The stream is not closed.
+     */
+    public void readLines(InputStream in, EntryHandler handler) throws IOException {
+        raw = true;
+        try {
+            read(in, handler);
+        } finally {
+            raw = false;
+        }
+    }
+
+    /**
+     * Hands every entry of {@code in} to {@code handler}. The reader is not closed.
+     */
+    public void read(Reader in, EntryHandler handler) throws IOException {
+        if (chars == null) {
+            chars = new char[bufferSize];
+        }
+        reset();
+        attributed = handler instanceof AttributedEntryHandler;
+        try {
+            int read;
+            while ((read = in.read(chars)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    accept(chars[i], handler);
+                }
+            }
+            endLine(handler);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Hands every entry of {@code content} to {@code handler}.
+     */
+    public void read(CharSequence content, EntryHandler handler) {
+        reset();
+        attributed = handler instanceof AttributedEntryHandler;
+        try {
+            for (int i = 0, n = content.length(); i < n; i++) {
+                accept(content.charAt(i), handler);
+            }
+            endLine(handler);
+        } finally {
+            reset();
+        }
+    }
+
+    private void reset() {
+        pending = 0;
+        skipLineFeed = false;
+        inComment = false;
+        line.length = 0;
+        comment.length = 0;
+    }
+
+    private void decode(int b, EntryHandler handler) {
+        if (pending > 0) {
+            if ((b & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (b & 0x3F);
+                if (--pending == 0) {
+                    appendCodePoint(codePoint, minimum);
+                }
+                return;
+            }
+            // truncated sequence, b starts something new
+            pending = 0;
+            append(REPLACEMENT);
+        }
+
+        if (b < 0x80) {
+            accept((char) b, handler);
+        } else if (b >= 0xC2 && b <= 0xDF) {
+            pending = 1;
+            codePoint = b & 0x1F;
+            minimum = 0x80;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            pending = 2;
+            codePoint = b & 0x0F;
+            minimum = 0x800;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            pending = 3;
+            codePoint = b & 0x07;
+            minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            append(REPLACEMENT);
+        }
+    }
+
+    private void appendCodePoint(int codePoint, int minimum) {
+        if (codePoint < minimum || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            // overlong encoding or encoded surrogate
+            append(REPLACEMENT);
+        } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            append((char) codePoint);
+        } else if (codePoint <= Character.MAX_CODE_POINT) {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        } else {
+            append(REPLACEMENT);
+        }
+    }
+
+    private void accept(char c, EntryHandler handler) {
+        if (c == '\n') {
+            if (!skipLineFeed) {
+                endLine(handler);
+            }
+            skipLineFeed = false;
+            return;
+        }
+        skipLineFeed = false;
+        if (c == '\r') {
+            endLine(handler);
+            skipLineFeed = true;
+        } else if (c == COMMENT && !inComment && !raw) {
+            inComment = true;
+        } else {
+            append(c);
+        }
+    }
+
+    private void append(char c) {
+        if (!inComment) {
+            line.append(c);
+        } else if (attributed) {
+            comment.append(c);
+        }
+    }
+
+    private void endLine(EntryHandler handler) {
+        if (raw) {
+            line.start = 0;
+            if (line.length > 0 && line.chars[0] != COMMENT && !line.isBlank()) {
+                handler.entry(line);
+            }
+        } else if (line.trim()) {
+            if (attributed) {
+                boolean hasAttributes = comment.length > 0 && comment.chars[0] == ATTRIBUTES && comment.trim(1);
+                ((AttributedEntryHandler) handler).entry(line, hasAttributes ? comment : null);
+            } else {
+                handler.entry(line);
+            }
+        }
+        line.length = 0;
+        comment.length = 0;
+        inComment = false;
+    }
+
+    public interface EntryHandler {
+        /**
+         * @param entry the current entry, only valid until this method returns
+         */
+        void entry(CharSequence entry);
+    }
+
+    /**
+     * Also receives the attributes recorded after each entry.
+     */
+    public interface AttributedEntryHandler extends EntryHandler {
+        /**
+         * @param entry      the current entry, only valid until this method returns
+         * @param attributes the text following {@code #@} on the entry's line, {@code null} if there is none; only
+         *                   valid until this method returns
+         */
+        void entry(CharSequence entry, CharSequence attributes);
+
+        @Override
+        default void entry(CharSequence entry) {
+            entry(entry, null);
+        }
+    }
+
+    private static final class Line implements CharSequence {
+        private char[] chars = new char[128];
+        private int start;
+        private int length;
+
+        private void append(char c) {
+            if (length == chars.length) {
+                char[] grown = new char[chars.length * 2];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+            chars[length++] = c;
+        }
+
+        private boolean isBlank() {
+            for (int i = start; i < length; i++) {
+                if (!Character.isWhitespace(chars[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Strips surrounding whitespace, returns {@code false} if nothing is left.
+         */
+        private boolean trim() {
+            return trim(0);
+        }
+
+        /**
+         * Strips the first {@code from} characters and surrounding whitespace, returns {@code false} if nothing is
+         * left.
+         */
+        private boolean trim(int from) {
+            int end = length;
+            start = from;
+            while (start < end && Character.isWhitespace(chars[start])) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(chars[end - 1])) {
+                end--;
+            }
+            length = end;
+            return start < end;
+        }
+
+        @Override
+        public int length() {
+            return length - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length - start) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return chars[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length - start || from > to) {
+                throw new IndexOutOfBoundsException("start: " + from + ", end: " + to);
+            }
+            return new String(chars, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, start, length - start);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import java.io.IOException;
+
+/**
+ * Writes index files in the format read by {@link IndexReader}: an optional header comment naming the generator,
+ * followed by one entry per line, each terminated by {@code \n}.
+ *
+ * @author Andres Almiray
+ */
+public final class IndexWriter {
+    public static final String HEADER_PREFIX = "# Generated by ";
+
+    private IndexWriter() {
+        // prevent instantiation
+    }
+
+    /**
+     * Writes the header for {@code generator} followed by {@code entries}, in iteration order.
+     *
+     * @return the number of bytes written, once encoded as UTF-8
+     */
+    public static long write(Appendable out, String generator, Iterable<? extends CharSequence> entries) throws IOException {
+        if (generator == null) {
+            throw new NullPointerException("generator");
+        }
+        out.append(HEADER_PREFIX).append(generator).append('\n');
+        return HEADER_PREFIX.length() + utf8Length(generator) + 1 + write(out, entries);
+    }
+
+    /**
+     * Writes {@code entries}, in iteration order.
+     *
+     * @return the number of bytes written, once encoded as UTF-8
+     */
+    public static long write(Appendable out, Iterable<? extends CharSequence> entries) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        if (entries == null) {
+            throw new NullPointerException("entries");
+        }
+        long bytes = 0;
+        for (CharSequence entry : entries) {
+            out.append(entry).append('\n');
+            bytes += utf8Length(entry) + 1;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns {@code entries} in index form, without a header.
+     */
+    public static String toString(Iterable<? extends CharSequence> entries) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            write(sb, entries);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the length of {@code s} once encoded as UTF-8, without encoding it. Unpaired surrogates count as the
+     * single byte {@code ?} they are encoded to.
+     */
+    public static int utf8Length(CharSequence s) {
+        int bytes = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
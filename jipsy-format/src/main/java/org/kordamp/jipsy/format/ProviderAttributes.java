@@ -0,0 +1,243 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The name, priority and qualifiers of a provider, as given by the {@code name}, {@code priority} and
+ * {@code qualifiers} members of {@code @ServiceProviderFor} and {@code @TypeProviderFor}.
+ * <p>
+ * Attributes are recorded in index files as a comment following the provider, starting with {@code #@}:
+ * <pre>
+ * com.acme.BasicCalculator #@name=basic;priority=10;qualifiers=fast,local
+ * </pre>
+ * {@code java.util.ServiceLoader} drops them like any other comment, and so does {@link IndexReader}. Readers that only
+ * skip lines starting with {@code #}, such as the {@code TypeLoader} of jipsy 1.2 and earlier, take the whole line,
+ * attributes included, as the provider's name, so index files holding providers with attributes must be read with
+ * this version. Members left to their default value are omitted, so providers without attributes are written as
+ * before. {@code %}, {@code ;}, {@code =}, {@code ,}, {@code #} as well as whitespace and control characters in values
+ * are written as {@code %XX}. Unknown members and malformed values are ignored when parsing.
+ * <p>
+ * Instances are immutable.
+ *
+ * @author Andres Almiray
+ */
+public final class ProviderAttributes {
+    public static final String PREFIX = " " + IndexReader.COMMENT + IndexReader.ATTRIBUTES;
+    public static final ProviderAttributes NONE = new ProviderAttributes("", 0, Collections.<String>emptyList());
+
+    private static final String NAME = "name";
+    private static final String PRIORITY = "priority";
+    private static final String QUALIFIERS = "qualifiers";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final String name;
+    private final int priority;
+    private final List<String> qualifiers;
+
+    private ProviderAttributes(String name, int priority, List<String> qualifiers) {
+        this.name = name;
+        this.priority = priority;
+        this.qualifiers = qualifiers;
+    }
+
+    /**
+     * @param name        the provider's name, empty if it has none
+     * @param priority    the provider's priority, higher values come first
+     * @param qualifiers  the provider's qualifiers, duplicates and empty values are dropped
+     */
+    public static ProviderAttributes of(String name, int priority, Collection<String> qualifiers) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (qualifiers == null) {
+            throw new NullPointerException("qualifiers");
+        }
+        LinkedHashSet<String> distinct = new LinkedHashSet<String>();
+        for (String qualifier : qualifiers) {
+            if (qualifier == null) {
+                throw new NullPointerException("qualifier");
+            }
+            if (!qualifier.isEmpty()) {
+                distinct.add(qualifier);
+            }
+        }
+        if (name.isEmpty() && priority == 0 && distinct.isEmpty()) {
+            return NONE;
+        }
+        return new ProviderAttributes(name, priority, Collections.unmodifiableList(new ArrayList<String>(distinct)));
+    }
+
+    /**
+     * Parses attributes in the form written by {@link #toString()}, e.g. as handed over by
+     * {@link IndexReader.AttributedEntryHandler}. Returns {@link #NONE} for {@code null}.
+     */
+    public static ProviderAttributes parse(CharSequence attributes) {
+        if (attributes == null) {
+            return NONE;
+        }
+        String name = "";
+        int priority = 0;
+        List<String> qualifiers = new ArrayList<String>();
+
+        String s = attributes.toString();
+        int start = 0;
+        while (start <= s.length()) {
+            int end = s.indexOf(';', start);
+            if (end < 0) {
+                end = s.length();
+            }
+            int separator = s.indexOf('=', start);
+            if (separator > start && separator < end) {
+                String key = s.substring(start, separator).trim();
+                String value = s.substring(separator + 1, end).trim();
+                if (NAME.equals(key)) {
+                    name = decode(value);
+                } else if (PRIORITY.equals(key)) {
+                    try {
+                        priority = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        // ignore
+                    }
+                } else if (QUALIFIERS.equals(key)) {
+                    for (String qualifier : value.split(",")) {
+                        qualifiers.add(decode(qualifier.trim()));
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        return of(name, priority, qualifiers);
+    }
+
+    /**
+     * Returns the index file line for {@code provider} with {@code attributes}, which may be {@code null}.
+     */
+    public static String line(String provider, ProviderAttributes attributes) {
+        if (provider == null) {
+            throw new NullPointerException("provider");
+        }
+        if (attributes == null || attributes.isEmpty()) {
+            return provider;
+        }
+        return provider + PREFIX + attributes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public List<String> getQualifiers() {
+        return qualifiers;
+    }
+
+    public boolean hasQualifier(String qualifier) {
+        return qualifiers.contains(qualifier);
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProviderAttributes that = (ProviderAttributes) o;
+        return priority == that.priority && name.equals(that.name) && qualifiers.equals(that.qualifiers);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name.hashCode();
+        result = 31 * result + priority;
+        result = 31 * result + qualifiers.hashCode();
+        return result;
+    }
+
+    /**
+     * Returns the attributes in the form recorded in index files, without the leading {@code #@}. Empty for
+     * {@link #NONE}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (!name.isEmpty()) {
+            sb.append(NAME).append('=');
+            encode(sb, name);
+        }
+        if (priority != 0) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(PRIORITY).append('=').append(priority);
+        }
+        if (!qualifiers.isEmpty()) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(QUALIFIERS).append('=');
+            for (int i = 0; i < qualifiers.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                encode(sb, qualifiers.get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void encode(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == ';' || c == '=' || c == ',' || c == IndexReader.COMMENT || c < 0x20 || c == 0x7F
+                || (c < 0x80 && Character.isWhitespace(c))) {
+                sb.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static String decode(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length() && Character.digit(value.charAt(i + 1), 16) >= 0
+                && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                sb.append((char) (Character.digit(value.charAt(i + 1), 16) << 4 | Character.digit(value.charAt(i + 2), 16)));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of provider names kept sorted in a single array, the order in which they are written to index files.
+ * Lookups are binary searches; there are no per-element nodes, and writing the set needs no copying or sorting.
+ * <p>
+ * Not thread safe.
+ *
+ * @author Andres Almiray
+ */
+public final class SortedProviderSet extends AbstractSet<String> {
+    private static final String[] EMPTY = new String[0];
+
+    private String[] names = EMPTY;
+    private int size;
+    private int modCount;
+
+    public SortedProviderSet() {
+    }
+
+    public SortedProviderSet(Collection<String> names) {
+        if (names instanceof SortedProviderSet) {
+            SortedProviderSet other = (SortedProviderSet) names;
+            this.names = Arrays.copyOf(other.names, other.size);
+            this.size = other.size;
+        } else {
+            addAll(names);
+        }
+    }
+
+    @Override
+    public boolean add(String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        int index = Arrays.binarySearch(names, 0, size, name);
+        if (index >= 0) {
+            return false;
+        }
+        index = -(index + 1);
+        if (size == names.length) {
+            names = Arrays.copyOf(names, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(names, index, names, index + 1, size - index);
+        names[index] = name;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && Arrays.binarySearch(names, 0, size, o) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int index = Arrays.binarySearch(names, 0, size, o);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(names, index + 1, names, index, size - index - 1);
+        names[--size] = null;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the name at {@code index} in sorted order.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        return names[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(names, size, Object[].class);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return names[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SortedProviderSet) {
+            SortedProviderSet other = (SortedProviderSet) o;
+            if (size != other.size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!names[i].equals(other.names[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
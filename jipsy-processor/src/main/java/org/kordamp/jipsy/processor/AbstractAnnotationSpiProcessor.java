@@ -0,0 +1,52 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import java.lang.annotation.Annotation;
+import java.util.Set;
+
+/**
+ * Base class of processors serving a single annotation.
+ *
+ * @author Andres Almiray
+ */
+public abstract class AbstractAnnotationSpiProcessor extends AbstractSpiProcessor {
+    protected abstract Class<? extends Annotation> getAnnotationClass();
+
+    @Override
+    protected boolean isAnnotationPresent(Set<? extends TypeElement> annotations) {
+        String annotationName = getAnnotationClass().getName();
+        for (TypeElement annotation : annotations) {
+            if (annotation.getQualifiedName().contentEquals(annotationName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void handleAnnotations(RoundEnvironment roundEnv) {
+        Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(getAnnotationClass());
+        for (Element e : elements) {
+            handleElement(e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.kordamp.jipsy.format.IndexReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for collectors of {@code AbstractProviderSet} entries.
+ * <p>
+ * Keeps a reverse index from provider to the entries it belongs to, so that removing a stale provider only
+ * touches the entries that actually contain it.
+ *
+ * @author Andres Almiray
+ */
+public abstract class AbstractCollector<T extends AbstractProviderSet> {
+    private final Map<String, T> entries = new LinkedHashMap<String, T>();
+    private final Map<String, Set<String>> providerIndex = new HashMap<String, Set<String>>();
+
+    // entries with a file from a previous compilation that has not been read yet
+    private final Set<String> pending = new LinkedHashSet<String>();
+    // providers of pending entries known without reading them, and the pending entries they belong to
+    private final Map<String, Set<String>> pendingIndex = new HashMap<String, Set<String>>();
+    // pending entries whose providers are not known, or that contain a removed provider
+    private final Set<String> pendingToLoad = new HashSet<String>();
+    private final Set<String> removed = new HashSet<String>();
+    protected final Initializer initializer;
+    protected final Logger logger;
+
+    protected AbstractCollector(Initializer initializer, Logger logger) {
+        this.initializer = initializer;
+        this.logger = logger;
+    }
+
+    protected abstract T newEntry(String name);
+
+    /**
+     * Whether any entry would be written with content different from what was read.
+     *
+     * @see AbstractProviderSet#isModified()
+     */
+    public boolean isModified() {
+        for (T entry : entries.values()) {
+            if (entry.isModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether any provider is known to this collector. When this returns {@code false} there is nothing that
+     * could become stale, so callers may skip looking for stale providers altogether.
+     */
+    public boolean hasProviders() {
+        return !providerIndex.isEmpty() || !pendingIndex.isEmpty() || !pendingToLoad.isEmpty();
+    }
+
+    /**
+     * Registers entries that have a file from a previous compilation. Their files are only read once the entry
+     * is requested, or by {@link #loadPending()}.
+     */
+    public void addExisting(Collection<String> names) {
+        for (String name : names) {
+            if (!entries.containsKey(name) && pending.add(name)) {
+                Collection<String> lines = initializer.knownProviders(name);
+                if (lines == null) {
+                    pendingToLoad.add(name);
+                } else {
+                    for (String line : lines) {
+                        String provider = IndexReader.parseEntry(line);
+                        if (provider != null) {
+                            index(pendingIndex, provider, name);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the existing entries not requested so far if providers have been removed since, as those providers
+     * may have to be dropped from their files. Entries whose providers are known are only read if they contain
+     * a removed provider. The remaining files are left unread, as they won't change.
+     */
+    public void loadPending() {
+        if (removed.isEmpty()) {
+            return;
+        }
+        for (String name : new ArrayList<String>(pending)) {
+            if (pendingToLoad.contains(name)) {
+                getEntry(name);
+            }
+        }
+    }
+
+    /**
+     * Reads all existing entries not requested so far, for output that has to list every entry.
+     */
+    public void loadAll() {
+        for (String name : new ArrayList<String>(pending)) {
+            getEntry(name);
+        }
+    }
+
+    protected T getEntry(String name) {
+        T entry = entries.get(name);
+        if (entry == null) {
+            entry = newEntry(name);
+            entry.owner = this;
+            entries.put(name, entry);
+            pending.remove(name);
+            pendingToLoad.remove(name);
+            if (initializer.readInitialData(name, entry::fromProviderNamesLine)) {
+                entry.markLoaded();
+                if (!removed.isEmpty()) {
+                    for (String provider : new ArrayList<String>(entry.providers())) {
+                        if (removed.contains(provider)) {
+                            entry.removeProvider(provider);
+                        }
+                    }
+                }
+            }
+        }
+        return entry;
+    }
+
+    protected Collection<T> entries() {
+        return Collections.unmodifiableMap(entries).values();
+    }
+
+    public void removeProvider(String provider) {
+        if (provider == null) {
+            throw new NullPointerException("provider");
+        }
+        logger.note(LogLocation.LOG_FILE, "Removing %s", provider);
+        removed.add(provider);
+        Set<String> pendingNames = pendingIndex.remove(provider);
+        if (pendingNames != null) {
+            pendingToLoad.addAll(pendingNames);
+        }
+        Set<String> names = providerIndex.remove(provider);
+        if (names != null) {
+            for (String name : names) {
+                entries.get(name).removeProvider(provider);
+            }
+        }
+    }
+
+    void providerAdded(AbstractProviderSet entry, String provider) {
+        index(providerIndex, provider, entry.getName());
+    }
+
+    private static void index(Map<String, Set<String>> index, String provider, String name) {
+        Set<String> names = index.get(provider);
+        if (names == null) {
+            names = new LinkedHashSet<String>();
+            index.put(provider, names);
+        }
+        names.add(name);
+    }
+
+    void providerRemoved(AbstractProviderSet entry, String provider) {
+        Set<String> names = providerIndex.get(provider);
+        if (names != null) {
+            names.remove(entry.getName());
+            if (names.isEmpty()) {
+                providerIndex.remove(provider);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return entries.values().toString();
+    }
+}
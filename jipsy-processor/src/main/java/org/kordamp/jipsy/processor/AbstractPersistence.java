@@ -17,6 +17,10 @@
  */
 package org.kordamp.jipsy.processor;
 
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.format.IndexWriter;
+
+import javax.lang.model.element.Element;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
@@ -32,6 +36,9 @@ public abstract class AbstractPersistence implements Persistence {
     protected final String path;
     protected final Logger logger;
 
+    private int filesWritten;
+    private long bytesWritten;
+
     public AbstractPersistence(String name, Logger logger, String path) {
         this.name = name;
         this.logger = logger;
@@ -39,24 +46,36 @@ public abstract class AbstractPersistence implements Persistence {
     }
 
     @Override
-    public void writeLog() {
+    public void write(String name, String value) throws IOException {
+        write(name, value, new Element[0]);
+    }
+
+    @Override
+    public void write(String name, String value, Element... originatingElements) throws IOException {
+        logger.note(LogLocation.BOTH, "Generating file '%s%s'", path, name);
+        Writer writer = createWriter(name, originatingElements);
         try {
-            String logContent = logger.getFileContent();
-            if (logContent != null && !logContent.isEmpty()) {
-                write("log" + System.currentTimeMillis() + ".log", logContent);
+            String header = IndexWriter.HEADER_PREFIX + this.name + "\n";
+            writer.write(header);
+            writer.write(value);
+            filesWritten++;
+            bytesWritten += IndexWriter.utf8Length(header) + IndexWriter.utf8Length(value);
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // Ignore
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
     @Override
-    public void write(String name, String value) throws IOException {
-        logger.note(LogLocation.BOTH, "Generating file '" + path + name + "'");
-        Writer writer = createWriter(name);
+    public void write(String name, Iterable<String> providers, Element... originatingElements) throws IOException {
+        logger.note(LogLocation.BOTH, "Generating file '%s%s'", path, name);
+        Writer writer = createWriter(name, originatingElements);
         try {
-            writer.write("# Generated by " + this.name + "\n");
-            writer.write(value);
+            bytesWritten += IndexWriter.write(writer, this.name, providers);
+            filesWritten++;
         } finally {
             try {
                 writer.close();
@@ -66,6 +85,35 @@ public abstract class AbstractPersistence implements Persistence {
         }
     }
 
+    @Override
+    public void addToIndex(BinaryIndex.Builder index, String root, Collection<? extends AbstractProviderSet> entries) {
+        String section = path.startsWith(root) ? path.substring(root.length()) : path;
+        index.section(section);
+        for (AbstractProviderSet entry : entries) {
+            if (!entry.providers().isEmpty()) {
+                // the content write(String, Iterable, Element...) gives the file, so that readers can match it
+                StringBuilder content = new StringBuilder();
+                try {
+                    IndexWriter.write(content, this.name, entry.lines());
+                } catch (IOException e) {
+                    // StringBuilder does not throw
+                    throw new IllegalStateException(e);
+                }
+                index.add(section, entry.getName(), content);
+            }
+        }
+    }
+
+    @Override
+    public int getFilesWritten() {
+        return filesWritten;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
     @Override
     public Collection<String> tryFind() {
         Collection<String> fileList;
@@ -87,13 +135,13 @@ public abstract class AbstractPersistence implements Persistence {
         List<String> result = new ArrayList<String>();
         for (File file : list) {
             String fileName = file.getName();
-            logger.note(LogLocation.LOG_FILE, "Discovered " + fileName);
+            logger.note(LogLocation.LOG_FILE, "Discovered %s", fileName);
             result.add(fileName);
         }
         return result;
     }
 
-    protected abstract Writer createWriter(String name) throws IOException;
+    protected abstract Writer createWriter(String name, Element... originatingElements) throws IOException;
 
     protected abstract FileFilter getFileFilter();
 }
@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.kordamp.jipsy.format.IndexReader;
+import org.kordamp.jipsy.format.IndexWriter;
+import org.kordamp.jipsy.format.ProviderAttributes;
+import org.kordamp.jipsy.format.SortedProviderSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for a named entry (a service or a type) and the set of providers registered for it, along with the
+ * {@link ProviderAttributes} of each provider.
+ *
+ * @author Andres Almiray
+ */
+public abstract class AbstractProviderSet {
+    protected final Logger logger;
+    private final String name;
+    private final SortedProviderSet providers = new SortedProviderSet();
+    // attributes of the providers that have any
+    private final Map<String, ProviderAttributes> attributes = new HashMap<String, ProviderAttributes>();
+    // providers read from the existing file and their attributes; null if there was no file
+    private SortedProviderSet loaded;
+    private Map<String, ProviderAttributes> loadedAttributes;
+
+    // set by the collector that owns this entry, keeps its provider index up to date
+    AbstractCollector<?> owner;
+
+    protected AbstractProviderSet(Logger logger, String name) {
+        if (logger == null) {
+            throw new NullPointerException("logger");
+        }
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        this.logger = logger;
+        logger.note(LogLocation.LOG_FILE, "Creating %s", name);
+        this.name = name;
+    }
+
+    public void addProvider(String provider) {
+        addProvider(provider, ProviderAttributes.NONE);
+    }
+
+    /**
+     * Adds {@code provider} with {@code attributes}, replacing the attributes it had if it was already present.
+     */
+    public void addProvider(String provider, ProviderAttributes attributes) {
+        if (provider == null) {
+            throw new NullPointerException("provider");
+        }
+        if (attributes == null) {
+            throw new NullPointerException("attributes");
+        }
+        logger.note(LogLocation.LOG_FILE, "Adding %s to %s", provider, name);
+        if (attributes.isEmpty()) {
+            this.attributes.remove(provider);
+        } else {
+            this.attributes.put(provider, attributes);
+        }
+        if (providers.add(provider) && owner != null) {
+            owner.providerAdded(this, provider);
+        }
+    }
+
+    /**
+     * Returns the attributes of {@code provider}, {@link ProviderAttributes#NONE} if it has none.
+     */
+    public ProviderAttributes getAttributes(String provider) {
+        ProviderAttributes result = attributes.get(provider);
+        return result != null ? result : ProviderAttributes.NONE;
+    }
+
+    public boolean contains(String provider) {
+        return providers.contains(provider);
+    }
+
+    public boolean removeProvider(String provider) {
+        if (providers.remove(provider)) {
+            attributes.remove(provider);
+            logger.note(LogLocation.LOG_FILE, "Removing %s from %s", provider, name);
+            if (owner != null) {
+                owner.providerRemoved(this, provider);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether writing this entry would change its file: the file does not exist yet and there are providers to
+     * write, or the providers or their attributes differ from the ones that were read. Other comments, such as the
+     * generated header, are not taken into account.
+     */
+    public boolean isModified() {
+        if (loaded == null) {
+            return !providers.isEmpty();
+        }
+        return !loaded.equals(providers) || !loadedAttributes.equals(attributes);
+    }
+
+    void markLoaded() {
+        this.loaded = new SortedProviderSet(providers);
+        this.loadedAttributes = new HashMap<String, ProviderAttributes>(attributes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> providers() {
+        return Collections.unmodifiableSet(providers);
+    }
+
+    /**
+     * Returns the lines to write for the providers, in sorted order, each followed by its attributes if it has any.
+     */
+    public List<String> lines() {
+        List<String> lines = new ArrayList<String>(providers.size());
+        for (String provider : providers) {
+            lines.add(ProviderAttributes.line(provider, attributes.get(provider)));
+        }
+        return lines;
+    }
+
+    public String toProviderNamesList() {
+        return IndexWriter.toString(lines());
+    }
+
+    public void fromProviderNamesList(String input) {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        new IndexReader().read(input, (IndexReader.AttributedEntryHandler) (entry, attributes) ->
+            addProvider(entry.toString(), ProviderAttributes.parse(attributes)));
+    }
+
+    /**
+     * Adds the provider named on a single line of a provider names list along with its attributes, ignoring other
+     * comments.
+     */
+    public void fromProviderNamesLine(String line) {
+        if (line == null) {
+            throw new NullPointerException("line");
+        }
+        String provider = IndexReader.parseEntry(line);
+        if (provider != null) {
+            addProvider(provider, ProviderAttributes.parse(IndexReader.parseAttributes(line)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "=" + providers;
+    }
+}
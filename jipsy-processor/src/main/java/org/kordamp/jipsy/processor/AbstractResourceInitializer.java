@@ -17,12 +17,16 @@
  */
 package org.kordamp.jipsy.processor;
 
+import org.kordamp.jipsy.format.IndexReader;
+
 import javax.annotation.processing.Filer;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
 
 /**
  * @author Andres Almiray
@@ -53,7 +57,7 @@ public abstract class AbstractResourceInitializer implements Initializer {
                 // Could happen
                 return null;
             } catch (IOException e) {
-                logger.note(LogLocation.MESSAGER, "Eclipse gave an IOException: " + e.getMessage());
+                logger.note(LogLocation.MESSAGER, "Eclipse gave an IOException: %s", e.getMessage());
                 return null;
             } catch (Exception other) {
                 try {
@@ -64,17 +68,51 @@ public abstract class AbstractResourceInitializer implements Initializer {
                     // Could happen
                     return null;
                 } catch (IOException e) {
-                    logger.note(LogLocation.MESSAGER, "Javac gave an IOException: " + e.getMessage());
+                    logger.note(LogLocation.MESSAGER, "Javac gave an IOException: %s", e.getMessage());
                     return null;
                 }
             }
             return result;
         } catch (IOException e) {
-            logger.note(LogLocation.MESSAGER, "getResource gave an IOException: " + e.getMessage());
+            logger.note(LogLocation.MESSAGER, "getResource gave an IOException: %s", e.getMessage());
         }
         return null;
     }
 
+    @Override
+    public boolean readInitialData(String name, Consumer<String> lines) {
+        try {
+            FileObject resource = filer.getResource(StandardLocation.CLASS_OUTPUT, "", path + name);
+
+            Reader reader;
+            try {
+                reader = resource.openReader(true);
+            } catch (FileNotFoundException e) {
+                // Could happen
+                return false;
+            } catch (IOException e) {
+                logger.note(LogLocation.MESSAGER, "Eclipse gave an IOException: %s", e.getMessage());
+                return false;
+            } catch (Exception other) {
+                // Javac can't handle the openReader
+                return Initializer.super.readInitialData(name, lines);
+            }
+
+            try {
+                new IndexReader().read(reader, Initializer.lineHandler(lines));
+            } finally {
+                reader.close();
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            // Could happen
+            return false;
+        } catch (IOException e) {
+            logger.note(LogLocation.MESSAGER, "Reading %s gave an IOException: %s", name, e.getMessage());
+        }
+        return false;
+    }
+
     protected CharSequence tryWithReader(FileObject resource) throws IOException {
         StringBuilder sb = new StringBuilder();
         BufferedReader reader = new BufferedReader(resource.openReader(true));
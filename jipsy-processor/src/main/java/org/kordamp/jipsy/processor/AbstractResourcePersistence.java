@@ -18,20 +18,34 @@
 package org.kordamp.jipsy.processor;
 
 import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * @author Andres Almiray
  */
 public abstract class AbstractResourcePersistence extends AbstractPersistence {
+    protected static final String STATE_SUFFIX = ".state";
+
     protected final Filer filer;
 
+    private StateInitializer initializer;
+    private ProcessorState state;
+    private boolean stateRead;
+
     public AbstractResourcePersistence(Filer filer, String name, Logger logger, String path) {
         super(name, logger, path);
         this.filer = filer;
@@ -39,7 +53,87 @@ public abstract class AbstractResourcePersistence extends AbstractPersistence {
 
     @Override
     public Initializer getInitializer() {
-        return new DefaultResourceInitializer(filer, path, logger);
+        initializer = new StateInitializer(new DefaultResourceInitializer(filer, path, logger), readState(), determineOutputLocation(), logger);
+        return initializer;
+    }
+
+    @Override
+    public int getFilesRead() {
+        return initializer == null ? 0 : initializer.getFilesRead();
+    }
+
+    @Override
+    public int getFilesRestored() {
+        return initializer == null ? 0 : initializer.getFilesRestored();
+    }
+
+    /**
+     * Location of the processor state, relative to the source output. Kept out of the class output so that it
+     * does not end up in packaged artifacts.
+     */
+    protected String getStatePath() {
+        return path.substring(0, path.length() - 1) + STATE_SUFFIX;
+    }
+
+    protected ProcessorState readState() {
+        if (!stateRead) {
+            stateRead = true;
+            try {
+                FileObject resource = filer.getResource(StandardLocation.SOURCE_OUTPUT, "", getStatePath());
+                InputStream in = new BufferedInputStream(resource.openInputStream());
+                try {
+                    state = ProcessorState.read(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                logger.note(LogLocation.LOG_FILE, "No usable state in %s: %s", getStatePath(), e);
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public void writeState(Collection<? extends AbstractProviderSet> entries) {
+        File dir = determineOutputLocation();
+        if (dir == null) {
+            return;
+        }
+
+        ProcessorState previous = readState();
+        ProcessorState next = new ProcessorState();
+        Set<String> names = new HashSet<String>();
+        for (AbstractProviderSet entry : entries) {
+            names.add(entry.getName());
+            next.put(entry.getName(), new File(dir, entry.getName()), entry.lines());
+        }
+        if (previous != null) {
+            // carry over the files that were not needed in this compilation
+            for (String name : previous.names()) {
+                File file = new File(dir, name);
+                Collection<String> providers = previous.getProviders(name, file);
+                if (!names.contains(name) && providers != null) {
+                    next.put(name, file, providers);
+                }
+            }
+        }
+
+        if (next.equals(previous) || (previous == null && next.names().isEmpty())) {
+            return;
+        }
+
+        try {
+            FileObject resource = filer.createResource(StandardLocation.SOURCE_OUTPUT, "", getStatePath());
+            OutputStream out = new BufferedOutputStream(resource.openOutputStream());
+            try {
+                next.write(out);
+            } finally {
+                out.close();
+            }
+            state = next;
+        } catch (IOException e) {
+            logger.warning(LogLocation.LOG_FILE, "Could not write processor state: " + e.getMessage());
+        }
     }
 
     @Override
@@ -51,7 +145,7 @@ public abstract class AbstractResourcePersistence extends AbstractPersistence {
             // Could happen
             return null;
         } catch (IOException e) {
-            logger.note(LogLocation.MESSAGER, "IOException while determining output location: " + e.getMessage());
+            logger.note(LogLocation.MESSAGER, "IOException while determining output location: %s", e.getMessage());
             return null;
         } catch (IllegalArgumentException e) {
             // Happens when the path is invalid. For instance absolute or relative to a path
@@ -82,13 +176,13 @@ public abstract class AbstractResourcePersistence extends AbstractPersistence {
         return filer.getResource(StandardLocation.CLASS_OUTPUT, "", path + name);
     }
 
-    protected FileObject createResourceFile(String name) throws IOException {
-        return filer.createResource(StandardLocation.CLASS_OUTPUT, "", path + name);
+    protected FileObject createResourceFile(String name, Element... originatingElements) throws IOException {
+        return filer.createResource(StandardLocation.CLASS_OUTPUT, "", path + name, originatingElements);
     }
 
     @Override
-    protected Writer createWriter(String name) throws IOException {
-        FileObject output = createResourceFile(name);
+    protected Writer createWriter(String name, Element... originatingElements) throws IOException {
+        FileObject output = createResourceFile(name, originatingElements);
         return output.openWriter();
     }
 }
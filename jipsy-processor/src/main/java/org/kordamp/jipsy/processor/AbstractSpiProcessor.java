@@ -17,11 +17,14 @@
  */
 package org.kordamp.jipsy.processor;
 
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.format.ProviderAttributes;
 import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
@@ -30,9 +33,13 @@ import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
+import java.io.File;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
 import java.util.*;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -40,8 +47,17 @@ import java.util.regex.Pattern;
  */
 public abstract class AbstractSpiProcessor extends AbstractProcessor {
     protected static final Pattern RELEASE_PATTERN = Pattern.compile("^RELEASE_(\\d+)$");
+    protected static final int MAX_SUPPORTED_VERSION = 21;
+    protected static final String LOG_FILE_NAME = "META-INF/jipsy/jipsy.log";
+    protected static final String STATS_FILE_NAME = "META-INF/jipsy/stats.json";
+    protected static final String REGISTRY_SUFFIX = ".registry";
     protected Options options;
     protected Logger logger;
+    protected ProcessorStats stats;
+
+    private final Map<String, TypeElement> originatingElements = new LinkedHashMap<String, TypeElement>();
+    // source of the registry generated in this compilation, if any
+    private String registrySource;
 
     @Override
     public synchronized void init(ProcessingEnvironment environment) {
@@ -54,6 +70,21 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         }
     }
 
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        SourceVersion[] svs = SourceVersion.values();
+        for (int i = svs.length - 1; i >= 0; i--) {
+            String name = svs[i].name();
+            Matcher m = RELEASE_PATTERN.matcher(name);
+            if (m.matches()) {
+                int release = Integer.parseInt(m.group(1));
+                if (release <= MAX_SUPPORTED_VERSION) return svs[i];
+            }
+        }
+
+        return SourceVersion.RELEASE_6;
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         if (options.disabled()) {
@@ -61,28 +92,66 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         }
 
         long start = System.currentTimeMillis();
-        logger.note(LogLocation.LOG_FILE, "Starting round with " + roundEnv.getRootElements().size() + " elements");
+        if (logger.isEnabled(LogLocation.LOG_FILE)) {
+            logger.note(LogLocation.LOG_FILE, "Starting round with " + roundEnv.getRootElements().size() + " elements");
+        }
+        stats.startRound(roundEnv.getRootElements().size());
 
+        long phase = stats.start();
         removeStaleData(roundEnv);
+        stats.record(getStatsName(), ProcessorStats.Phase.REMOVE_STALE_DATA, phase);
 
-        handleAnnotations(roundEnv);
+        if (isAnnotationPresent(annotations)) {
+            phase = stats.start();
+            handleAnnotations(roundEnv);
+            stats.record(getStatsName(), ProcessorStats.Phase.HANDLE_ANNOTATIONS, phase);
+        }
 
-        long end = System.currentTimeMillis();
-        logger.note(LogLocation.LOG_FILE, "Ending round in " + (end - start) + " milliseconds");
+        if (logger.isEnabled(LogLocation.LOG_FILE)) {
+            long end = System.currentTimeMillis();
+            logger.note(LogLocation.LOG_FILE, "Ending round in " + (end - start) + " milliseconds");
+        }
         if (roundEnv.processingOver()) {
+            phase = stats.start();
             writeData();
+            writeIndex();
+            stats.record(getStatsName(), ProcessorStats.Phase.WRITE_DATA, phase);
+            writeStats();
+            if (logger instanceof ProcessorLogger) {
+                ((ProcessorLogger) logger).close();
+            }
+            writeLog();
+        } else {
+            roundCompleted();
         }
         return false;
     }
 
-    protected abstract Class<? extends Annotation> getAnnotationClass();
+    /**
+     * Name under which the statistics of this processor are reported.
+     */
+    protected String getStatsName() {
+        return getClass().getSimpleName();
+    }
 
     protected abstract void handleElement(Element e);
 
-    protected abstract void removeStaleData(RoundEnvironment roundEnv);
+    /**
+     * Whether providers registered by previous compilations are known. If none are, no root element of the
+     * current round can be stale.
+     */
+    protected abstract boolean hasKnownProviders();
+
+    protected abstract void removeProvider(String provider);
 
     protected abstract void writeData();
 
+    /**
+     * Adds every entry of this processor to {@code index}, along with the elements its providers originate from.
+     * Called after {@link #writeData()} when {@code spi_index} is set and this processor {@link #writesIndex()}.
+     */
+    protected abstract void addToIndex(BinaryIndex.Builder index, Collection<Element> originatingElements);
+
     protected void warning(String message) {
         processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message);
     }
@@ -92,9 +161,241 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         if (options.disabled()) {
             return;
         }
-        logger = new ProcessorLogger(processingEnv.getMessager(), options);
+        logger = new ProcessorLogger(processingEnv.getMessager(), options, createLogSink());
+        stats = new ProcessorStats(getClass().getName(), options.stats());
 
         checkCompatibility();
+        initializeData();
+    }
+
+    /**
+     * Initializes this processor with settings shared with other processors, skipping the option parsing and
+     * compatibility checks already performed by the caller.
+     */
+    void initialize(ProcessingEnvironment environment, Options options, Logger logger, ProcessorStats stats) {
+        super.init(environment);
+        this.options = options;
+        this.logger = logger;
+        this.stats = stats;
+        initializeData();
+    }
+
+    protected abstract void initializeData();
+
+    /**
+     * Name of the log file, below {@code spi_dir} in the source output. {@link JipsyProcessor} logs to
+     * {@code META-INF/jipsy/jipsy.log}; the individual processors, which may run side by side in one compilation, each
+     * log to a file named after their class, so that neither their log files nor their rolled over logs collide.
+     */
+    protected String getLogFileName() {
+        return "META-INF/jipsy/" + getClass().getSimpleName() + ".log";
+    }
+
+    /**
+     * Streams the log to {@link #getLogFileName()} in the source output when logging is enabled, so that it does not
+     * end up in the jar. Falls back to a bounded in-memory log, written by {@link #writeLog()}, when the output folder
+     * is not on the file system.
+     */
+    protected LogSink createLogSink() {
+        if (options.logging()) {
+            try {
+                FileObject resource = processingEnv.getFiler().getResource(StandardLocation.SOURCE_OUTPUT, "", options.dir() + getLogFileName());
+                URI uri = resource.toUri();
+                if ("file".equals(uri.getScheme())) {
+                    return new RollingFileLogSink(new File(uri), options.logMaxSize(), options.logMaxFiles());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // fall back to memory
+            }
+        }
+        return new MemoryLogSink((int) options.logMaxSize());
+    }
+
+    /**
+     * Writes the messages still held in memory by the log sink to {@link #getLogFileName()} in the source output,
+     * once per compilation.
+     */
+    protected void writeLog() {
+        String content = logger.getFileContent();
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.SOURCE_OUTPUT, "", options.dir() + getLogFileName());
+            Writer writer = resource.openWriter();
+            try {
+                writer.write(content);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Could not write log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the file counters of {@code persistence} to the statistics of this processor.
+     */
+    protected void recordStats(Persistence persistence) {
+        String name = getStatsName();
+        stats.count(name, ProcessorStats.Counter.FILES_READ, persistence.getFilesRead());
+        stats.count(name, ProcessorStats.Counter.FILES_RESTORED, persistence.getFilesRestored());
+        stats.count(name, ProcessorStats.Counter.FILES_WRITTEN, persistence.getFilesWritten());
+        stats.count(name, ProcessorStats.Counter.BYTES_WRITTEN, persistence.getBytesWritten());
+    }
+
+    /**
+     * Name of the statistics report, below {@code spi_dir} in the source output. {@link JipsyProcessor} reports to
+     * {@code META-INF/jipsy/stats.json}, the individual processors to a file named after their class.
+     */
+    protected String getStatsFileName() {
+        return "META-INF/jipsy/" + getClass().getSimpleName() + "-stats.json";
+    }
+
+    /**
+     * Writes the statistics to {@link #getStatsFileName()} in the source output, when enabled.
+     */
+    protected void writeStats() {
+        if (!stats.isEnabled()) {
+            return;
+        }
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.SOURCE_OUTPUT, "", options.dir() + getStatsFileName());
+            Writer writer = resource.openWriter();
+            try {
+                writer.write(stats.toJson());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            logger.warning(LogLocation.BOTH, "Could not write statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the entries of all index files to {@code META-INF/jipsy/index.bin} when {@code spi_index} is set. An
+     * index left by a previous compilation is replaced by an empty one when the option is not set, so that the index
+     * files are used instead of a stale index.
+     *
+     * @see BinaryIndex
+     */
+    protected void writeIndex() {
+        if (!writesIndex()) {
+            if (options.index()) {
+                logger.warning(LogLocation.BOTH, "Option spi_index is ignored by " + getClass().getSimpleName() +
+                    ", only " + JipsyProcessor.class.getSimpleName() + " writes the index");
+            }
+            return;
+        }
+
+        String indexName = options.dir() + BinaryIndex.RESOURCE_NAME;
+        BinaryIndex.Builder index = new BinaryIndex.Builder();
+        Set<Element> elements = new LinkedHashSet<Element>();
+        if (options.index()) {
+            addToIndex(index, elements);
+        } else if (!exists(indexName)) {
+            return;
+        }
+
+        logger.note(LogLocation.BOTH, "Generating file '%s'", indexName);
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", indexName,
+                elements.toArray(new Element[0]));
+            OutputStream out = resource.openOutputStream();
+            try {
+                index.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            logger.warning(LogLocation.BOTH, "Could not write index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Whether this processor writes the binary index. The index lists every kind and can only be created once per
+     * compilation, so only {@link JipsyProcessor}, which serves all kinds, writes it.
+     */
+    protected boolean writesIndex() {
+        return false;
+    }
+
+    /**
+     * Called at the end of every round but the last one.
+     */
+    protected void roundCompleted() {
+        // nothing to do by default
+    }
+
+    /**
+     * Generates the registry class {@code simpleName} listing the providers of {@code entries}, when enabled with
+     * {@code spi_registry} and not done yet in this compilation.
+     *
+     * @see RegistryGenerator
+     */
+    protected void generateRegistry(String generator, String simpleName, Collection<? extends AbstractProviderSet> entries, boolean instances) {
+        String packageName = options.registry();
+        if (packageName == null || registrySource != null) {
+            return;
+        }
+
+        RegistryGenerator registry = new RegistryGenerator(generator, processingEnv.getElementUtils(), processingEnv.getFiler(), logger);
+        registrySource = registry.source(packageName, simpleName, entries, instances);
+        try {
+            registry.writeSource(packageName + "." + simpleName, registrySource, getOriginatingElements(providers(entries)));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write registry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the marker resource {@code META-INF/jipsy/<kind>.registry} naming the registry generated by
+     * {@link #generateRegistry}, provided it still lists the providers of {@code entries}. Otherwise the marker names
+     * no registry, so that the index files are used instead of a stale registry. A marker left by a previous
+     * compilation is reset when {@code spi_registry} is not set.
+     */
+    protected void writeRegistryMarker(String generator, String simpleName, String kind, Collection<? extends AbstractProviderSet> entries, boolean instances) {
+        String markerName = options.dir() + "META-INF/jipsy/" + kind + REGISTRY_SUFFIX;
+        String packageName = options.registry();
+        RegistryGenerator registry = new RegistryGenerator(generator, processingEnv.getElementUtils(), processingEnv.getFiler(), logger);
+        if (packageName == null) {
+            if (exists(markerName)) {
+                try {
+                    registry.writeMarker(markerName, null);
+                } catch (IOException e) {
+                    logger.warning(LogLocation.LOG_FILE, "Could not reset registry marker: " + e.getMessage());
+                }
+            }
+            return;
+        }
+
+        String className = packageName + "." + simpleName;
+        if (registrySource == null || !registrySource.equals(registry.source(packageName, simpleName, entries, instances))) {
+            logger.note(LogLocation.BOTH, "Providers changed after registry '%s' was generated, it will not be used", className);
+            className = null;
+        }
+        try {
+            registry.writeMarker(markerName, className, getOriginatingElements(providers(entries)));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write registry: " + e.getMessage());
+        }
+    }
+
+    private boolean exists(String name) {
+        try {
+            URI uri = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", name).toUri();
+            return uri.isAbsolute() && "file".equals(uri.getScheme()) && new File(uri).isFile();
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static List<String> providers(Collection<? extends AbstractProviderSet> entries) {
+        List<String> providers = new ArrayList<String>();
+        for (AbstractProviderSet entry : entries) {
+            providers.addAll(entry.providers());
+        }
+        return providers;
     }
 
     protected void checkCompatibility() {
@@ -118,13 +419,25 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         }
     }
 
-    protected void handleAnnotations(RoundEnvironment roundEnv) {
-        Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(getAnnotationClass());
-        for (Element e : elements) {
-            handleElement(e);
+    protected void removeStaleData(RoundEnvironment roundEnv) {
+        if (!hasKnownProviders()) {
+            return;
+        }
+
+        for (Element e : roundEnv.getRootElements()) {
+            if (e instanceof TypeElement) {
+                removeProvider(createProperQualifiedName((TypeElement) e));
+            }
         }
     }
 
+    /**
+     * Whether any of the annotations handled by this processor is among {@code annotations}.
+     */
+    protected abstract boolean isAnnotationPresent(Set<? extends TypeElement> annotations);
+
+    protected abstract void handleAnnotations(RoundEnvironment roundEnv);
+
     protected void reportError(TypeElement element, CheckResult result) {
         processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, element.getSimpleName() + " " + result.getMessage(), element);
     }
@@ -154,7 +467,8 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
     }
 
     protected CheckResult isImplementation(TypeElement currentClass, TypeElement type) {
-        if (isAssignable(currentClass.asType(), type.asType())) {
+        Types typeUtils = processingEnv.getTypeUtils();
+        if (typeUtils.isAssignable(typeUtils.erasure(currentClass.asType()), typeUtils.erasure(type.asType()))) {
             return CheckResult.OK;
         }
 
@@ -167,20 +481,6 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         return CheckResult.valueOf(message + " " + type.getQualifiedName());
     }
 
-    protected boolean isAssignable(TypeMirror currentClass, TypeMirror type) {
-        Types typeUtils = processingEnv.getTypeUtils();
-        if (typeUtils.isAssignable(typeUtils.erasure(currentClass), typeUtils.erasure(type))) {
-            return true;
-        }
-
-        for (TypeMirror superType : typeUtils.directSupertypes(currentClass)) {
-            if (isAssignable(superType, type)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     protected AnnotationValue findSingleValueMember(AnnotationMirror mirror, String memberName) {
         Map<? extends ExecutableElement, ? extends AnnotationValue> elementValues = mirror.getElementValues();
         for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elementValues.entrySet()) {
@@ -191,6 +491,32 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         throw new IllegalStateException("No value found in element");
     }
 
+    /**
+     * Returns the {@code name}, {@code priority} and {@code qualifiers} given to {@code mirror}.
+     */
+    protected ProviderAttributes findAttributes(AnnotationMirror mirror) {
+        String name = "";
+        int priority = 0;
+        List<String> qualifiers = new ArrayList<String>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            Name memberName = entry.getKey().getSimpleName();
+            Object value = entry.getValue().getValue();
+            if (memberName.contentEquals("name") && value instanceof String) {
+                name = (String) value;
+            } else if (memberName.contentEquals("priority") && value instanceof Integer) {
+                priority = (Integer) value;
+            } else if (memberName.contentEquals("qualifiers") && value instanceof List) {
+                for (Object qualifier : (List<?>) value) {
+                    Object qualifierValue = ((AnnotationValue) qualifier).getValue();
+                    if (qualifierValue instanceof String) {
+                        qualifiers.add((String) qualifierValue);
+                    }
+                }
+            }
+        }
+        return ProviderAttributes.of(name, priority, qualifiers);
+    }
+
     @SuppressWarnings("unchecked")
     protected Collection<AnnotationValue> findCollectionValueMember(AnnotationMirror mirror, String memberName) {
         Map<? extends ExecutableElement, ? extends AnnotationValue> elementValues = mirror.getElementValues();
@@ -202,6 +528,25 @@ public abstract class AbstractSpiProcessor extends AbstractProcessor {
         throw new IllegalStateException("No value found in element");
     }
 
+    /**
+     * Records the element a provider was declared by, so that generated files can be linked back to their
+     * sources. Build tools such as Gradle rely on this information for incremental annotation processing.
+     */
+    protected void addOriginatingElement(String provider, TypeElement element) {
+        originatingElements.put(provider, element);
+    }
+
+    protected Element[] getOriginatingElements(Collection<String> providers) {
+        List<Element> elements = new ArrayList<Element>();
+        for (String provider : providers) {
+            TypeElement element = originatingElements.get(provider);
+            if (element != null) {
+                elements.add(element);
+            }
+        }
+        return elements.toArray(new Element[0]);
+    }
+
     protected String createProperQualifiedName(TypeElement type) {
         return processingEnv.getElementUtils().getBinaryName(type).toString();
     }
@@ -35,6 +35,43 @@ limitations under the License.
 
 package org.kordamp.jipsy.processor;
 
+import org.kordamp.jipsy.format.IndexReader;
+import org.kordamp.jipsy.format.ProviderAttributes;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
 public interface Initializer {
     CharSequence initialData(String name);
-}
\ No newline at end of file
+
+    /**
+     * Hands each provider listed in the named file to {@code lines} as it is read, followed by its attributes if it
+     * has any, without other comments or blank lines.
+     *
+     * @return {@code false} if there is no such file
+     */
+    default boolean readInitialData(String name, Consumer<String> lines) {
+        CharSequence data = initialData(name);
+        if (data == null) {
+            return false;
+        }
+        new IndexReader().read(data, lineHandler(lines));
+        return true;
+    }
+
+    /**
+     * Returns a handler passing each entry to {@code lines} in the form described by {@link #readInitialData}.
+     */
+    static IndexReader.EntryHandler lineHandler(Consumer<String> lines) {
+        return (IndexReader.AttributedEntryHandler) (entry, attributes) ->
+            lines.accept(ProviderAttributes.line(entry.toString(), ProviderAttributes.parse(attributes)));
+    }
+
+    /**
+     * Returns the providers listed in the named file, in the form described by {@link #readInitialData}, if they are
+     * known without reading it, {@code null} otherwise.
+     */
+    default Collection<String> knownProviders(String name) {
+        return null;
+    }
+}
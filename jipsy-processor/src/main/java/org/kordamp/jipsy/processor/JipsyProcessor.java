@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
+import org.kordamp.jipsy.processor.sisu.SisuIndexProviderProcessor;
+import org.kordamp.jipsy.processor.type.TypeProviderProcessor;
+
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves {@code @ServiceProviderFor}, {@code @TypeProviderFor} and {@code @SisuIndexFor} in a single processor.
+ * <p>
+ * Options, logger and compatibility checks are shared by all kinds, and root elements are traversed once per
+ * round, each annotated element being dispatched to the processor responsible for its annotation.
+ *
+ * @author Andres Almiray
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION,
+    Options.SPI_LOG_MAX_SIZE_OPTION, Options.SPI_LOG_MAX_FILES_OPTION, Options.SPI_STATS_OPTION,
+    Options.SPI_REGISTRY_OPTION, Options.SPI_INDEX_OPTION})
+public class JipsyProcessor extends AbstractSpiProcessor {
+    public static final String NAME = JipsyProcessor.class.getName()
+        + " (" + JipsyProcessor.class.getPackage().getImplementationVersion() + ")";
+
+    private final Map<String, AbstractAnnotationSpiProcessor> processors = new LinkedHashMap<String, AbstractAnnotationSpiProcessor>();
+
+    public JipsyProcessor() {
+        register(new ServiceProviderProcessor());
+        register(new TypeProviderProcessor());
+        register(new SisuIndexProviderProcessor());
+    }
+
+    private void register(AbstractAnnotationSpiProcessor processor) {
+        processors.put(processor.getAnnotationClass().getName(), processor);
+    }
+
+    @Override
+    protected void initializeData() {
+        for (AbstractAnnotationSpiProcessor processor : processors.values()) {
+            processor.initialize(processingEnv, options, logger, stats);
+        }
+    }
+
+    @Override
+    protected boolean hasKnownProviders() {
+        for (AbstractAnnotationSpiProcessor processor : processors.values()) {
+            if (processor.hasKnownProviders()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void removeProvider(String provider) {
+        for (AbstractAnnotationSpiProcessor processor : processors.values()) {
+            if (processor.hasKnownProviders()) {
+                processor.removeProvider(provider);
+            }
+        }
+    }
+
+    @Override
+    protected boolean isAnnotationPresent(Set<? extends TypeElement> annotations) {
+        for (TypeElement annotation : annotations) {
+            if (processors.containsKey(annotation.getQualifiedName().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void handleAnnotations(RoundEnvironment roundEnv) {
+        for (Element e : roundEnv.getRootElements()) {
+            handleTypes(e);
+        }
+    }
+
+    private void handleTypes(Element e) {
+        if (!(e instanceof TypeElement)) {
+            return;
+        }
+
+        handleElement(e);
+        for (Element enclosed : e.getEnclosedElements()) {
+            handleTypes(enclosed);
+        }
+    }
+
+    @Override
+    protected void handleElement(Element e) {
+        for (AnnotationMirror annotation : e.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            AbstractAnnotationSpiProcessor processor = processors.get(annotationType.getQualifiedName().toString());
+            if (processor != null) {
+                processor.handleElement(e);
+            }
+        }
+    }
+
+    @Override
+    protected void roundCompleted() {
+        for (AbstractAnnotationSpiProcessor processor : processors.values()) {
+            processor.roundCompleted();
+        }
+    }
+
+    @Override
+    protected void writeData() {
+        for (AbstractAnnotationSpiProcessor processor : processors.values()) {
+            long start = stats.start();
+            processor.writeData();
+            stats.recordNested(processor.getStatsName(), ProcessorStats.Phase.WRITE_DATA, start);
+        }
+    }
+
+    @Override
+    protected boolean writesIndex() {
+        return true;
+    }
+
+    @Override
+    protected String getLogFileName() {
+        return LOG_FILE_NAME;
+    }
+
+    @Override
+    protected String getStatsFileName() {
+        return STATS_FILE_NAME;
+    }
+
+    @Override
+    protected void addToIndex(BinaryIndex.Builder index, Collection<Element> originatingElements) {
+        // a single index for all kinds
+        for (AbstractAnnotationSpiProcessor processor : processors.values()) {
+            processor.addToIndex(index, originatingElements);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+/**
+ * Destination of the messages a {@code ProcessorLogger} sends to the log file.
+ *
+ * @author Andres Almiray
+ */
+public interface LogSink {
+    /**
+     * Appends a single message. Implementations add the line terminator.
+     */
+    void append(String message);
+
+    /**
+     * Returns the messages still held in memory by this sink, if any.
+     */
+    String getContent();
+
+    /**
+     * Writes pending messages and releases any resources held by this sink.
+     */
+    void close();
+}
@@ -35,9 +35,46 @@ limitations under the License.
 
 package org.kordamp.jipsy.processor;
 
+import java.util.function.Supplier;
+
 public interface Logger {
     void note(LogLocation location, String message);
 
+    /**
+     * Whether messages sent to the given location are recorded at all. Callers building expensive messages
+     * should check this first, or use one of the lazy {@code note} variants.
+     */
+    default boolean isEnabled(LogLocation location) {
+        return true;
+    }
+
+    default void note(LogLocation location, Supplier<String> message) {
+        if (location == null) {
+            throw new NullPointerException("location");
+        }
+        if (isEnabled(location)) {
+            note(location, message.get());
+        }
+    }
+
+    default void note(LogLocation location, String format, Object arg) {
+        if (location == null) {
+            throw new NullPointerException("location");
+        }
+        if (isEnabled(location)) {
+            note(location, String.format(format, arg));
+        }
+    }
+
+    default void note(LogLocation location, String format, Object arg1, Object arg2) {
+        if (location == null) {
+            throw new NullPointerException("location");
+        }
+        if (isEnabled(location)) {
+            note(location, String.format(format, arg1, arg2));
+        }
+    }
+
     void warning(LogLocation location, String message);
 
     String getFileContent();
@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+/**
+ * Keeps messages in memory, retaining at most {@code maxSize} characters. Once full, the oldest messages are
+ * discarded.
+ *
+ * @author Andres Almiray
+ */
+public final class MemoryLogSink implements LogSink {
+    public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    private final int maxSize;
+    private final StringBuilder content = new StringBuilder();
+
+    public MemoryLogSink() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public MemoryLogSink(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized void append(String message) {
+        content.append(message).append("\n");
+        if (content.length() > maxSize) {
+            int end = content.indexOf("\n", content.length() - maxSize);
+            content.delete(0, end < 0 ? content.length() : end + 1);
+        }
+    }
+
+    @Override
+    public synchronized String getContent() {
+        return content.toString();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
@@ -35,6 +35,7 @@ limitations under the License.
 
 package org.kordamp.jipsy.processor;
 
+import javax.lang.model.SourceVersion;
 import java.util.*;
 
 public final class Options {
@@ -42,20 +43,38 @@ public final class Options {
     public static final String SPI_DIR_OPTION = "spi_dir";
     public static final String SPI_LOG_OPTION = "spi_log";
     public static final String SPI_VERBOSE_OPTION = "spi_verbose";
+    public static final String SPI_LOG_MAX_SIZE_OPTION = "spi_log_max_size";
+    public static final String SPI_LOG_MAX_FILES_OPTION = "spi_log_max_files";
+    public static final String SPI_STATS_OPTION = "spi_stats";
+    public static final String SPI_REGISTRY_OPTION = "spi_registry";
+    public static final String SPI_INDEX_OPTION = "spi_index";
+
+    public static final long DEFAULT_LOG_MAX_SIZE = 1024 * 1024;
+    public static final int DEFAULT_LOG_MAX_FILES = 2;
 
     private final List<String> warnings = new ArrayList<String>();
 
     private final boolean disabled;
     private final boolean log;
     private final boolean verbose;
+    private final boolean stats;
+    private final boolean index;
     private final String dir;
+    private final long logMaxSize;
+    private final int logMaxFiles;
+    private final String registry;
     private final String report;
 
     public Options(String processorInfo, Map<String, String> values) {
         disabled = getBooleanParameter(values, SPI_DISABLED_OPTION);
         log = getBooleanParameter(values, SPI_LOG_OPTION);
         verbose = getBooleanParameter(values, SPI_VERBOSE_OPTION);
+        stats = getBooleanParameter(values, SPI_STATS_OPTION);
+        index = getBooleanParameter(values, SPI_INDEX_OPTION);
         dir = cleanPath(values.get(SPI_DIR_OPTION));
+        logMaxSize = getNumberParameter(values, SPI_LOG_MAX_SIZE_OPTION, 1, DEFAULT_LOG_MAX_SIZE);
+        logMaxFiles = (int) getNumberParameter(values, SPI_LOG_MAX_FILES_OPTION, 0, DEFAULT_LOG_MAX_FILES);
+        registry = getPackageParameter(values, SPI_REGISTRY_OPTION);
 
         report = createReport(processorInfo, values);
     }
@@ -72,10 +91,36 @@ public final class Options {
         return log;
     }
 
+    public boolean stats() {
+        return stats;
+    }
+
+    /**
+     * Whether all index files should also be written to a single binary index.
+     */
+    public boolean index() {
+        return index;
+    }
+
     public String dir() {
         return dir;
     }
 
+    public long logMaxSize() {
+        return logMaxSize;
+    }
+
+    public int logMaxFiles() {
+        return logMaxFiles;
+    }
+
+    /**
+     * Package of the provider registry classes to generate, {@code null} if none should be generated.
+     */
+    public String registry() {
+        return registry;
+    }
+
     public Collection<String> getWarnings() {
         return Collections.unmodifiableCollection(warnings);
     }
@@ -96,6 +141,11 @@ public final class Options {
         writeOption(result, values, SPI_VERBOSE_OPTION);
         writeOption(result, values, SPI_LOG_OPTION);
         writeOption(result, values, SPI_DIR_OPTION);
+        writeOption(result, values, SPI_LOG_MAX_SIZE_OPTION);
+        writeOption(result, values, SPI_LOG_MAX_FILES_OPTION);
+        writeOption(result, values, SPI_STATS_OPTION);
+        writeOption(result, values, SPI_REGISTRY_OPTION);
+        writeOption(result, values, SPI_INDEX_OPTION);
 
         return result.toString();
     }
@@ -131,6 +181,37 @@ public final class Options {
         return false;
     }
 
+    private long getNumberParameter(Map<String, String> values, String optionName, long minimum, long defaultValue) {
+        String optionValue = values.get(optionName);
+        if (optionValue == null) {
+            return defaultValue;
+        }
+
+        try {
+            long value = Long.parseLong(optionValue.trim());
+            if (value >= minimum && value <= Integer.MAX_VALUE) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        warnings.add("Unrecognized value for parameter '" + optionName + "'. Found '" + optionValue + "'.  Legal values: integers from " + minimum + " to " + Integer.MAX_VALUE + ".");
+        return defaultValue;
+    }
+
+    private String getPackageParameter(Map<String, String> values, String optionName) {
+        if (!values.containsKey(optionName)) {
+            return null;
+        }
+
+        String optionValue = values.get(optionName);
+        if (optionValue != null && SourceVersion.isName(optionValue.trim())) {
+            return optionValue.trim();
+        }
+        warnings.add("Unrecognized value for parameter '" + optionName + "'. Found '" + optionValue + "'.  Legal values: package names.");
+        return null;
+    }
+
     private void writeOption(StringBuilder result, Map<String, String> values, String optionName) {
         result
             .append(" - ")
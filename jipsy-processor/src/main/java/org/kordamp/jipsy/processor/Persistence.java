@@ -17,17 +17,25 @@
  */
 package org.kordamp.jipsy.processor;
 
+import org.kordamp.jipsy.format.BinaryIndex;
+
+import javax.lang.model.element.Element;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 
 public interface Persistence {
-    void writeLog();
-
     Initializer getInitializer();
 
     void write(String name, String value) throws IOException;
 
+    void write(String name, String value, Element... originatingElements) throws IOException;
+
+    /**
+     * Writes {@code providers} in iteration order, one per line, below the generated header.
+     */
+    void write(String name, Iterable<String> providers, Element... originatingElements) throws IOException;
+
     File determineOutputLocation();
 
     Collection<String> tryFind();
@@ -35,4 +43,24 @@ public interface Persistence {
     Collection<String> listDiscoveredFiles(File[] list);
 
     void delete() throws IOException ;
+
+    /**
+     * Records the providers of the given entries, so that a later compilation can restore them without reading
+     * their files.
+     */
+    void writeState(Collection<? extends AbstractProviderSet> entries);
+
+    /**
+     * Adds the providers of {@code entries} to {@code index}, as a section covering this persistence's directory
+     * relative to {@code root}.
+     */
+    void addToIndex(BinaryIndex.Builder index, String root, Collection<? extends AbstractProviderSet> entries);
+
+    int getFilesRead();
+
+    int getFilesRestored();
+
+    int getFilesWritten();
+
+    long getBytesWritten();
 }
@@ -44,24 +44,40 @@ public final class ProcessorLogger implements Logger {
     private final Messager messager;
     private final Options options;
 
-    private final StringBuffer logContent = new StringBuffer();
+    private final LogSink logSink;
 
     public ProcessorLogger(Messager messager, Options options) {
+        this(messager, options, new MemoryLogSink());
+    }
+
+    public ProcessorLogger(Messager messager, Options options, LogSink logSink) {
         if (messager == null) {
             throw new NullPointerException("messager");
         }
         if (options == null) {
             throw new NullPointerException("options");
         }
+        if (logSink == null) {
+            throw new NullPointerException("logSink");
+        }
 
         this.messager = messager;
         this.options = options;
+        this.logSink = logSink;
         note(LogLocation.MESSAGER, options.report());
         for (String warning : options.getWarnings()) {
             warning(LogLocation.BOTH, warning);
         }
     }
 
+    @Override
+    public boolean isEnabled(LogLocation location) {
+        if (location == null) {
+            throw new NullPointerException("location");
+        }
+        return (options.verbose() && location.toMessager()) || (options.logging() && location.toLogFile());
+    }
+
     @Override
     public void note(LogLocation location, String message) {
         if (location == null) {
@@ -76,7 +92,7 @@ public final class ProcessorLogger implements Logger {
         }
 
         if (options.logging() && location.toLogFile()) {
-            logContent.append(message).append("\n");
+            logSink.append(message);
         }
     }
 
@@ -94,13 +110,17 @@ public final class ProcessorLogger implements Logger {
         }
 
         if (options.logging() && location.toLogFile()) {
-            logContent.append("warning: ").append(message).append("\n");
+            logSink.append("warning: " + message);
         }
     }
 
     @Override
     public String getFileContent() {
-        return logContent.toString();
+        return logSink.getContent();
+    }
+
+    public void close() {
+        logSink.close();
     }
 
     public static String exceptionToString(Exception exception) {
@@ -0,0 +1,236 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot of the files written by a processor: the size, timestamp, CRC32 and providers of each file.
+ * <p>
+ * A later compilation restores the providers of every unchanged file from this snapshot, which is read sequentially
+ * in one go, instead of reading and parsing each file. A file with the recorded size and timestamp is unchanged. When
+ * only the timestamp differs, or the file was recorded so soon after it was written that a same-size edit within the
+ * file system's timestamp granularity would go unnoticed, the CRC32 of its contents decides. Files changed by other
+ * means are read again.
+ *
+ * @author Andres Almiray
+ */
+public final class ProcessorState {
+    private static final int MAGIC = 0x4a505359;
+    private static final int VERSION = 2;
+    // coarsest timestamp granularity of common file systems, FAT's
+    private static final long RACY_WINDOW = 2000L;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    public void put(String name, long lastModified, long length, long crc, Collection<String> providers) {
+        put(name, lastModified, length, crc, false, providers);
+    }
+
+    /**
+     * Records the providers of {@code file}, if it exists and can be read.
+     */
+    public void put(String name, File file, Collection<String> providers) {
+        if (!file.isFile()) {
+            return;
+        }
+        long lastModified = file.lastModified();
+        long crc = crc(file);
+        if (crc >= 0) {
+            put(name, lastModified, file.length(), crc, lastModified + RACY_WINDOW >= System.currentTimeMillis(), providers);
+        }
+    }
+
+    private void put(String name, long lastModified, long length, long crc, boolean racy, Collection<String> providers) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (providers == null) {
+            throw new NullPointerException("providers");
+        }
+        entries.put(name, new Entry(lastModified, length, crc, racy, new ArrayList<String>(providers)));
+    }
+
+    /**
+     * Returns the recorded providers of {@code file}, or {@code null} if there are none or if the file changed since.
+     */
+    public List<String> getProviders(String name, File file) {
+        Entry entry = entries.get(name);
+        if (entry == null || !file.isFile() || file.length() != entry.length) {
+            return null;
+        }
+        if ((entry.racy || file.lastModified() != entry.lastModified) && crc(file) != entry.crc) {
+            return null;
+        }
+        return Collections.unmodifiableList(entry.providers);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public void write(OutputStream out) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            data.writeUTF(e.getKey());
+            data.writeLong(entry.lastModified);
+            data.writeLong(entry.length);
+            data.writeLong(entry.crc);
+            data.writeBoolean(entry.racy);
+            data.writeInt(entry.providers.size());
+            for (String provider : entry.providers) {
+                data.writeUTF(provider);
+            }
+        }
+        data.flush();
+        new DataOutputStream(out).writeLong(checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(OutputStream)}.
+     *
+     * @throws IOException if the input is not a snapshot of this version or is corrupted
+     */
+    public static ProcessorState read(InputStream in) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+        DataInputStream data = new DataInputStream(checked);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a processor state");
+        }
+        if (data.readInt() != VERSION) {
+            throw new IOException("Unsupported processor state version");
+        }
+
+        ProcessorState state = new ProcessorState();
+        int count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = data.readUTF();
+            long lastModified = data.readLong();
+            long length = data.readLong();
+            long crc = data.readLong();
+            boolean racy = data.readBoolean();
+            int size = data.readInt();
+            List<String> providers = new ArrayList<String>(size);
+            for (int j = 0; j < size; j++) {
+                providers.add(data.readUTF());
+            }
+            state.entries.put(name, new Entry(lastModified, length, crc, racy, providers));
+        }
+
+        long checksum = checked.getChecksum().getValue();
+        if (new DataInputStream(in).readLong() != checksum) {
+            throw new IOException("Corrupted processor state");
+        }
+        return state;
+    }
+
+    /**
+     * CRC32 of the contents of {@code file}, or {@code -1} if it cannot be read.
+     */
+    private static long crc(File file) {
+        try {
+            CheckedInputStream in = new CheckedInputStream(new FileInputStream(file), new CRC32());
+            try {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // checksum only
+                }
+                return in.getChecksum().getValue();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return entries.equals(((ProcessorState) o).entries);
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return entries.keySet().toString();
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final long length;
+        private final long crc;
+        // recorded within the timestamp granularity of its last change, so the timestamp cannot be trusted
+        private final boolean racy;
+        private final List<String> providers;
+
+        private Entry(long lastModified, long length, long crc, boolean racy, List<String> providers) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.crc = crc;
+            this.racy = racy;
+            this.providers = providers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Entry entry = (Entry) o;
+            return lastModified == entry.lastModified && length == entry.length && crc == entry.crc &&
+                racy == entry.racy && providers.equals(entry.providers);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (int) (length ^ (length >>> 32));
+            result = 31 * result + (int) (crc ^ (crc >>> 32));
+            result = 31 * result + (racy ? 1 : 0);
+            result = 31 * result + providers.hashCode();
+            return result;
+        }
+    }
+}
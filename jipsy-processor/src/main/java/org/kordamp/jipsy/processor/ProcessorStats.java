@@ -0,0 +1,239 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects timings and counters of a compilation when the {@code spi_stats} option is set, and renders them as
+ * JSON. When disabled all methods return immediately.
+ * <p>
+ * Phase timings are recorded in nanoseconds, both for the round and for the processor they are attributed to.
+ * Validation happens while handling annotations, so its time is also part of {@code handleAnnotations}.
+ *
+ * @author Andres Almiray
+ */
+public final class ProcessorStats {
+    public enum Phase {
+        REMOVE_STALE_DATA("removeStaleData"),
+        HANDLE_ANNOTATIONS("handleAnnotations"),
+        VALIDATION("validation"),
+        WRITE_DATA("writeData");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    public enum Counter {
+        ANNOTATED_ELEMENTS("annotatedElements"),
+        PROVIDERS("providers"),
+        FILES_READ("filesRead"),
+        FILES_RESTORED("filesRestored"),
+        FILES_WRITTEN("filesWritten"),
+        BYTES_WRITTEN("bytesWritten");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private final boolean enabled;
+    private final String processorInfo;
+    private final long started = System.nanoTime();
+    private final List<Round> rounds = new ArrayList<Round>();
+    private final Map<String, Section> processors = new LinkedHashMap<String, Section>();
+
+    public ProcessorStats(String processorInfo, boolean enabled) {
+        this.processorInfo = processorInfo;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void startRound(int rootElements) {
+        if (enabled) {
+            rounds.add(new Round(rounds.size() + 1, rootElements));
+        }
+    }
+
+    /**
+     * Returns the start time of a phase, to be passed to {@link #record(String, Phase, long)}.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void record(String processor, Phase phase, long start) {
+        if (!enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        section(processor).add(phase, elapsed);
+        if (!rounds.isEmpty()) {
+            currentRound().add(phase, elapsed);
+        }
+    }
+
+    /**
+     * Records a phase that runs within the same phase of another processor, which already accounts for it in
+     * the round.
+     */
+    public void recordNested(String processor, Phase phase, long start) {
+        if (enabled) {
+            section(processor).add(phase, System.nanoTime() - start);
+        }
+    }
+
+    public void count(String processor, Counter counter, long amount) {
+        if (!enabled) {
+            return;
+        }
+        section(processor).add(counter, amount);
+        if (counter == Counter.ANNOTATED_ELEMENTS && !rounds.isEmpty()) {
+            currentRound().annotatedElements += amount;
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"processor\": ").append(quote(processorInfo)).append(",\n");
+        json.append("  \"totalNanos\": ").append(System.nanoTime() - started).append(",\n");
+        json.append("  \"rounds\": [");
+        for (int i = 0; i < rounds.size(); i++) {
+            Round round = rounds.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"round\": ").append(round.number)
+                .append(", \"rootElements\": ").append(round.rootElements)
+                .append(", \"annotatedElements\": ").append(round.annotatedElements)
+                .append(", \"phases\": ");
+            appendPhases(json, round.phases);
+            json.append("}");
+        }
+        json.append(rounds.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"processors\": {");
+        boolean first = true;
+        for (Map.Entry<String, Section> e : processors.entrySet()) {
+            Section section = e.getValue();
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    ").append(quote(e.getKey())).append(": {");
+            for (Counter counter : Counter.values()) {
+                Long value = section.counters.get(counter);
+                json.append("\"").append(counter.key).append("\": ").append(value == null ? 0L : value).append(", ");
+            }
+            json.append("\"phases\": ");
+            appendPhases(json, section.phases);
+            json.append("}");
+        }
+        json.append(processors.isEmpty() ? "}\n" : "\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static void appendPhases(StringBuilder json, Map<Phase, Long> phases) {
+        json.append("{");
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            if (!first) {
+                json.append(", ");
+            }
+            first = false;
+            Long value = phases.get(phase);
+            json.append("\"").append(phase.key).append("\": ").append(value == null ? 0L : value);
+        }
+        json.append("}");
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append("\"").toString();
+    }
+
+    private Round currentRound() {
+        return rounds.get(rounds.size() - 1);
+    }
+
+    private Section section(String processor) {
+        Section section = processors.get(processor);
+        if (section == null) {
+            section = new Section();
+            processors.put(processor, section);
+        }
+        return section;
+    }
+
+    private static void add(Map<Phase, Long> phases, Phase phase, long amount) {
+        Long current = phases.get(phase);
+        phases.put(phase, current == null ? amount : current + amount);
+    }
+
+    private static final class Round {
+        private final int number;
+        private final int rootElements;
+        private long annotatedElements;
+        private final Map<Phase, Long> phases = new EnumMap<Phase, Long>(Phase.class);
+
+        private Round(int number, int rootElements) {
+            this.number = number;
+            this.rootElements = rootElements;
+        }
+
+        private void add(Phase phase, long amount) {
+            ProcessorStats.add(phases, phase, amount);
+        }
+    }
+
+    private static final class Section {
+        private final Map<Phase, Long> phases = new EnumMap<Phase, Long>(Phase.class);
+        private final Map<Counter, Long> counters = new EnumMap<Counter, Long>(Counter.class);
+
+        private void add(Phase phase, long amount) {
+            ProcessorStats.add(phases, phase, amount);
+        }
+
+        private void add(Counter counter, long amount) {
+            Long current = counters.get(counter);
+            counters.put(counter, current == null ? amount : current + amount);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.kordamp.jipsy.format.IndexWriter;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates the source of a registry class that lists the providers of every entry without reflection, together
+ * with a marker resource naming that class.
+ * <p>
+ * The generated class implements {@code Function<String, Supplier<?>[]>} when providers are instantiated, returning
+ * a constructor reference per provider, or {@code Function<String, Class<?>[]>} otherwise, returning class literals.
+ * It returns {@code null} for names it does not know. An entry is left out of the registry if any of its providers
+ * cannot be referenced from the registry package, so that callers fall back to the text files for it.
+ * <p>
+ * Sources created in the last round make javac report a warning, so the source is generated once the first round
+ * is complete, and the marker in the last round, only if the providers did not change in between.
+ *
+ * @author Andres Almiray
+ */
+public class RegistryGenerator {
+    private final String name;
+    private final Elements elements;
+    private final Filer filer;
+    private final Logger logger;
+
+    public RegistryGenerator(String name, Elements elements, Filer filer, Logger logger) {
+        this.name = name;
+        this.elements = elements;
+        this.filer = filer;
+        this.logger = logger;
+    }
+
+    /**
+     * Returns the source of {@code packageName.simpleName} listing the providers of {@code entries}.
+     *
+     * @param instances whether the registry creates provider instances or only lists provider classes
+     */
+    public String source(String packageName, String simpleName, Collection<? extends AbstractProviderSet> entries, boolean instances) {
+        StringBuilder source = new StringBuilder();
+        String value = instances ? "Supplier<?>" : "Class<?>";
+        source.append("// Generated by ").append(name).append("\n")
+            .append("package ").append(packageName).append(";\n\n")
+            .append("import java.util.function.Function;\n");
+        if (instances) {
+            source.append("import java.util.function.Supplier;\n");
+        }
+        source.append("\n")
+            .append("public final class ").append(simpleName).append(" implements Function<String, ").append(value).append("[]> {\n")
+            .append("    @Override\n")
+            .append("    public ").append(value).append("[] apply(String name) {\n")
+            .append("        switch (name) {\n");
+        for (AbstractProviderSet entry : entries) {
+            List<String> references = references(entry, instances);
+            if (references.isEmpty()) {
+                continue;
+            }
+            source.append("            case ").append(literal(entry.getName())).append(":\n")
+                .append("                return new ").append(value).append("[]{");
+            String separator = "\n";
+            for (String reference : references) {
+                source.append(separator).append("                    ").append(reference);
+                separator = ",\n";
+            }
+            source.append("\n                };\n");
+        }
+        source.append("            default:\n")
+            .append("                return null;\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append("}\n");
+        return source.toString();
+    }
+
+    public void writeSource(String className, String source, Element... originatingElements) throws IOException {
+        logger.note(LogLocation.BOTH, "Generating registry '%s'", className);
+        JavaFileObject file = filer.createSourceFile(className, originatingElements);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the marker resource {@code markerName} naming the registry class, or naming none if
+     * {@code className} is {@code null}.
+     */
+    public void writeMarker(String markerName, String className, Element... originatingElements) throws IOException {
+        FileObject marker = filer.createResource(StandardLocation.CLASS_OUTPUT, "", markerName, originatingElements);
+        Writer writer = marker.openWriter();
+        try {
+            IndexWriter.write(writer, name, className == null ? Collections.<String>emptySet() : Collections.singleton(className));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<String> references(AbstractProviderSet entry, boolean instances) {
+        List<String> references = new ArrayList<String>();
+        for (String provider : entry.providers()) {
+            TypeElement element = resolve(provider, instances);
+            if (element == null) {
+                logger.note(LogLocation.LOG_FILE, "Leaving %s out of the registry, %s cannot be referenced", entry.getName(), provider);
+                return Collections.emptyList();
+            }
+            references.add(element.getQualifiedName() + (instances ? "::new" : ".class"));
+        }
+        return references;
+    }
+
+    private TypeElement resolve(String provider, boolean instances) {
+        TypeElement element = elements.getTypeElement(provider.replace('$', '.'));
+        if (element == null || !elements.getBinaryName(element).contentEquals(provider)) {
+            return null;
+        }
+        if (instances && (element.getKind() != ElementKind.CLASS
+            || element.getModifiers().contains(Modifier.ABSTRACT)
+            || !hasPublicNoArgsConstructor(element))) {
+            return null;
+        }
+        if (instances && element.getEnclosingElement().getKind() == ElementKind.CLASS
+            && !element.getModifiers().contains(Modifier.STATIC)) {
+            return null;
+        }
+        for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (!e.getModifiers().contains(Modifier.PUBLIC)) {
+                return null;
+            }
+        }
+        return element;
+    }
+
+    private static boolean hasPublicNoArgsConstructor(TypeElement element) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String literal(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                // unicode escapes of line terminators would end the literal
+                result.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7e) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
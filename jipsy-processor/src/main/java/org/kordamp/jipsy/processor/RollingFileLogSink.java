@@ -0,0 +1,147 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Streams messages to a single log file as they arrive.
+ * <p>
+ * At most {@code bufferSize} characters are held in memory before being written out. When the file would grow
+ * past {@code maxFileSize} bytes it is rolled over to {@code <name>.1}, older files shifting to {@code <name>.2}
+ * and so on; only {@code maxBackups} rolled files are retained.
+ *
+ * @author Andres Almiray
+ */
+public final class RollingFileLogSink implements LogSink {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final long maxFileSize;
+    private final int maxBackups;
+    private final int bufferSize;
+    private final StringBuilder buffer = new StringBuilder();
+
+    private OutputStream out;
+    private long fileSize;
+
+    public RollingFileLogSink(File file, long maxFileSize, int maxBackups) {
+        this(file, maxFileSize, maxBackups, DEFAULT_BUFFER_SIZE);
+    }
+
+    public RollingFileLogSink(File file, long maxFileSize, int maxBackups, int bufferSize) {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (maxFileSize <= 0) {
+            throw new IllegalArgumentException("maxFileSize must be positive");
+        }
+        if (maxBackups < 0) {
+            throw new IllegalArgumentException("maxBackups must not be negative");
+        }
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxBackups = maxBackups;
+        this.bufferSize = bufferSize;
+        this.fileSize = file.length();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void append(String message) {
+        buffer.append(message).append("\n");
+        if (buffer.length() >= bufferSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public String getContent() {
+        // everything ends up in the file
+        return "";
+    }
+
+    public synchronized void flush() {
+        if (buffer.length() == 0) {
+            return;
+        }
+
+        byte[] bytes = buffer.toString().getBytes(UTF_8);
+        buffer.setLength(0);
+        try {
+            if (fileSize > 0 && fileSize + bytes.length > maxFileSize) {
+                roll();
+            }
+            if (out == null) {
+                File parent = file.getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                out = new FileOutputStream(file, true);
+            }
+            out.write(bytes);
+            fileSize += bytes.length;
+        } catch (IOException e) {
+            // logging must never break the compilation
+            closeQuietly();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        closeQuietly();
+    }
+
+    private void roll() {
+        closeQuietly();
+        if (maxBackups == 0) {
+            file.delete();
+        } else {
+            new File(file.getPath() + "." + maxBackups).delete();
+            for (int i = maxBackups - 1; i > 0; i--) {
+                File backup = new File(file.getPath() + "." + i);
+                if (backup.exists()) {
+                    backup.renameTo(new File(file.getPath() + "." + (i + 1)));
+                }
+            }
+            file.renameTo(new File(file.getPath() + ".1"));
+        }
+        fileSize = 0;
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Restores the providers of unchanged files from a {@code ProcessorState}, reading the files themselves through
+ * the given initializer only when the state does not cover them.
+ *
+ * @author Andres Almiray
+ */
+public class StateInitializer implements Initializer {
+    private final Initializer delegate;
+    private final ProcessorState state;
+    private final File dir;
+    private final Logger logger;
+    private int filesRead;
+    private int filesRestored;
+
+    public StateInitializer(Initializer delegate, ProcessorState state, File dir, Logger logger) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        this.delegate = delegate;
+        this.state = state;
+        this.dir = dir;
+        this.logger = logger;
+    }
+
+    @Override
+    public CharSequence initialData(String name) {
+        return delegate.initialData(name);
+    }
+
+    @Override
+    public boolean readInitialData(String name, Consumer<String> lines) {
+        Collection<String> providers = knownProviders(name);
+        if (providers == null) {
+            if (delegate.readInitialData(name, lines)) {
+                filesRead++;
+                return true;
+            }
+            return false;
+        }
+
+        logger.note(LogLocation.LOG_FILE, "Restoring %s from state", name);
+        filesRestored++;
+        for (String provider : providers) {
+            lines.accept(provider);
+        }
+        return true;
+    }
+
+    public int getFilesRead() {
+        return filesRead;
+    }
+
+    public int getFilesRestored() {
+        return filesRestored;
+    }
+
+    @Override
+    public Collection<String> knownProviders(String name) {
+        if (state == null || dir == null) {
+            return null;
+        }
+        return state.getProviders(name, new File(dir, name));
+    }
+}
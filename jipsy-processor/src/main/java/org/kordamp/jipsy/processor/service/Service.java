@@ -35,81 +35,12 @@ limitations under the License.
 
 package org.kordamp.jipsy.processor.service;
 
-import org.kordamp.jipsy.processor.LogLocation;
+import org.kordamp.jipsy.processor.AbstractProviderSet;
 import org.kordamp.jipsy.processor.Logger;
 
-import java.util.*;
-
-public final class Service {
-    private final Logger logger;
-    private final String serviceName;
-    private final Set<String> providers = new HashSet<String>();
-
+public final class Service extends AbstractProviderSet {
     public Service(Logger logger, String name) {
-        if (logger == null) {
-            throw new NullPointerException("logger");
-        }
-        if (name == null) {
-            throw new NullPointerException("name");
-        }
-        this.logger = logger;
-        logger.note(LogLocation.LOG_FILE, "Creating " + name);
-        this.serviceName = name;
-    }
-
-    public void addProvider(String provider) {
-        if (provider == null) {
-            throw new NullPointerException("provider");
-        }
-        logger.note(LogLocation.LOG_FILE, "Adding " + provider + " to " + serviceName);
-        providers.add(provider);
-    }
-
-    public boolean contains(String provider) {
-        return providers.contains(provider);
-    }
-
-    public boolean removeProvider(String provider) {
-        if (providers.remove(provider)) {
-            logger.note(LogLocation.LOG_FILE, "Removing " + provider + " from " + serviceName);
-            return true;
-        }
-        return false;
-    }
-
-    public String getName() {
-        return serviceName;
-    }
-
-    public String toProviderNamesList() {
-        StringBuilder sb = new StringBuilder();
-        List<String> names = new ArrayList<String>(providers);
-        Collections.sort(names);
-        for (String provider : names) {
-            sb.append(provider).append("\n");
-        }
-        return sb.toString();
-    }
-
-    public void fromProviderNamesList(String input) {
-        if (input == null) {
-            throw new NullPointerException("input");
-        }
-        String[] lines = input.split("\\n");
-        for (String line : lines) {
-            String[] content = line.split("#");
-            if (content.length > 0) {
-                String trimmed = content[0].trim();
-                if (trimmed.length() > 0) {
-                    addProvider(trimmed);
-                }
-            }
-        }
-    }
-
-    @Override
-    public String toString() {
-        return serviceName + "=" + providers;
+        super(logger, name);
     }
 
     @Override
@@ -119,14 +50,14 @@ public final class Service {
 
         Service service = (Service) o;
 
-        return serviceName.equals(service.serviceName) &&
-            providers.containsAll(service.providers) && service.providers.containsAll(providers);
+        return getName().equals(service.getName()) &&
+            providers().containsAll(service.providers()) && service.providers().containsAll(providers());
     }
 
     @Override
     public int hashCode() {
-        int result = serviceName.hashCode();
-        result = 31 * result + providers.hashCode();
+        int result = getName().hashCode();
+        result = 31 * result + providers().hashCode();
         return result;
     }
-}
\ No newline at end of file
+}
@@ -35,81 +35,30 @@ limitations under the License.
 
 package org.kordamp.jipsy.processor.service;
 
+import org.kordamp.jipsy.processor.AbstractCollector;
 import org.kordamp.jipsy.processor.Initializer;
-import org.kordamp.jipsy.processor.LogLocation;
 import org.kordamp.jipsy.processor.Logger;
 
-import java.util.*;
-
-public final class ServiceCollector {
-    private final Map<String, Service> services = new LinkedHashMap<String, Service>();
-    private final Map<String, Service> cached = new LinkedHashMap<String, Service>();
-
-    private final List<String> removed = new ArrayList<String>();
-    private final Initializer initializer;
-    private final Logger logger;
+import java.util.Collection;
 
+public final class ServiceCollector extends AbstractCollector<Service> {
     public ServiceCollector(Initializer initializer, Logger logger) {
-        this.initializer = initializer;
-        this.logger = logger;
+        super(initializer, logger);
     }
 
-    public void cache() {
-        this.cached.putAll(services);
-    }
-
-    public boolean isModified() {
-        if (cached.size() != services.size()) {
-            return true;
-        }
-
-        for (Map.Entry<String, Service> e : cached.entrySet()) {
-            if (!services.containsKey(e.getKey())) {
-                return true;
-            }
-            if (!e.getValue().equals(services.get(e.getKey()))) {
-                return true;
-            }
-        }
-
-        return false;
+    @Override
+    protected Service newEntry(String name) {
+        return new Service(logger, name);
     }
 
     public Service getService(String service) {
         if (service == null) {
             throw new NullPointerException("service");
         }
-        if (!services.containsKey(service)) {
-            Service newService = new Service(logger, service);
-            CharSequence initialData = initializer.initialData(service);
-            if (initialData != null) {
-                newService.fromProviderNamesList(initialData.toString());
-                for (String provider : removed) {
-                    newService.removeProvider(provider);
-                }
-            }
-            services.put(service, newService);
-        }
-        return services.get(service);
+        return getEntry(service);
     }
 
     public Collection<Service> services() {
-        return Collections.unmodifiableMap(services).values();
-    }
-
-    public void removeProvider(String provider) {
-        if (provider == null) {
-            throw new NullPointerException("provider");
-        }
-        logger.note(LogLocation.LOG_FILE, "Removing " + provider);
-        removed.add(provider);
-        for (Service service : services.values()) {
-            service.removeProvider(provider);
-        }
-    }
-
-    @Override
-    public String toString() {
-        return services.values().toString();
+        return entries();
     }
 }
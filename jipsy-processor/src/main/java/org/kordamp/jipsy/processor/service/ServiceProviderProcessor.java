@@ -36,27 +36,28 @@ limitations under the License.
 package org.kordamp.jipsy.processor.service;
 
 import org.kordamp.jipsy.annotations.ServiceProviderFor;
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.format.ProviderAttributes;
 import org.kordamp.jipsy.processor.*;
 
-import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedOptions;
-import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
 import javax.tools.Diagnostic.Kind;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Collection;
+import java.util.Collections;
 
 @SupportedAnnotationTypes("*")
-@SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION})
-public class ServiceProviderProcessor extends AbstractSpiProcessor {
+@SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION,
+    Options.SPI_LOG_MAX_SIZE_OPTION, Options.SPI_LOG_MAX_FILES_OPTION, Options.SPI_STATS_OPTION,
+    Options.SPI_REGISTRY_OPTION, Options.SPI_INDEX_OPTION})
+public class ServiceProviderProcessor extends AbstractAnnotationSpiProcessor {
     public static final String NAME = ServiceProviderProcessor.class.getName()
         + " (" + ServiceProviderProcessor.class.getPackage().getImplementationVersion() + ")";
 
-    private static final int MAX_SUPPORTED_VERSION = 21;
+    public static final String REGISTRY_CLASS_NAME = "JipsyServiceRegistry";
 
     private Persistence persistence;
     private ServiceCollector data;
@@ -67,36 +68,17 @@ public class ServiceProviderProcessor extends AbstractSpiProcessor {
     }
 
     @Override
-    public SourceVersion getSupportedSourceVersion() {
-        SourceVersion[] svs = SourceVersion.values();
-        for (int i = svs.length - 1; i >= 0; i--) {
-            String name = svs[i].name();
-            Matcher m = RELEASE_PATTERN.matcher(name);
-            if (m.matches()) {
-                int release = Integer.parseInt(m.group(1));
-                if (release <= MAX_SUPPORTED_VERSION) return svs[i];
-            }
-        }
-
-        return SourceVersion.RELEASE_6;
-    }
-
-    @Override
-    protected void initialize() {
-        super.initialize();
-
+    protected void initializeData() {
         persistence = new ServicePersistence(NAME, options.dir(), processingEnv.getFiler(), logger);
         data = new ServiceCollector(persistence.getInitializer(), logger);
 
-        // Initialize if possible
-        for (String serviceName : persistence.tryFind()) {
-            data.getService(serviceName);
-        }
-        data.cache();
+        // Existing files are only read when needed
+        data.addExisting(persistence.tryFind());
     }
 
     @Override
     protected void writeData() {
+        data.loadPending();
         if (data.isModified()) {
             if (data.services().isEmpty()) {
                 logger.note(LogLocation.LOG_FILE, "Writing output");
@@ -108,27 +90,50 @@ public class ServiceProviderProcessor extends AbstractSpiProcessor {
             } else {
                 logger.note(LogLocation.LOG_FILE, "Writing output");
                 for (Service service : data.services()) {
+                    if (!service.isModified()) {
+                        logger.note(LogLocation.LOG_FILE, "Keeping unchanged %s", service.getName());
+                        continue;
+                    }
                     try {
-                        persistence.write(service.getName(), service.toProviderNamesList());
+                        persistence.write(service.getName(), service.lines(), getOriginatingElements(service.providers()));
                     } catch (IOException e) {
                         processingEnv.getMessager().printMessage(Kind.ERROR, e.getMessage());
                     }
                 }
-                persistence.writeLog();
             }
         }
+        persistence.writeState(data.services());
+        writeRegistryMarker(NAME, REGISTRY_CLASS_NAME, "services", data.services(), true);
+        recordStats(persistence);
     }
 
     @Override
-    protected void removeStaleData(RoundEnvironment roundEnv) {
-        for (Element e : roundEnv.getRootElements()) {
-            if (e instanceof TypeElement) {
-                TypeElement currentClass = (TypeElement) e;
-                data.removeProvider(createProperQualifiedName(currentClass));
-            }
+    protected void roundCompleted() {
+        if (options.registry() != null) {
+            data.loadAll();
+            generateRegistry(NAME, REGISTRY_CLASS_NAME, data.services(), true);
         }
     }
 
+    @Override
+    protected void addToIndex(BinaryIndex.Builder index, Collection<Element> originatingElements) {
+        data.loadAll();
+        persistence.addToIndex(index, options.dir(), data.services());
+        for (Service entry : data.services()) {
+            Collections.addAll(originatingElements, getOriginatingElements(entry.providers()));
+        }
+    }
+
+    @Override
+    protected boolean hasKnownProviders() {
+        return data.hasProviders();
+    }
+
+    @Override
+    protected void removeProvider(String provider) {
+        data.removeProvider(provider);
+    }
+
     @Override
     protected void handleElement(Element e) {
         if (!(e instanceof TypeElement)) {
@@ -136,19 +141,28 @@ public class ServiceProviderProcessor extends AbstractSpiProcessor {
         }
 
         TypeElement currentClass = (TypeElement) e;
+        stats.count(getStatsName(), ProcessorStats.Counter.ANNOTATED_ELEMENTS, 1);
 
+        long start = stats.start();
         CheckResult checkResult = checkCurrentClass(currentClass);
+        stats.record(getStatsName(), ProcessorStats.Phase.VALIDATION, start);
         if (checkResult.isError()) {
             reportError(currentClass, checkResult);
             return;
         }
 
-        for (TypeElement service : findServices(currentClass)) {
-            CheckResult implementationResult = isImplementation(currentClass, service);
-            if (implementationResult.isError()) {
-                reportError(currentClass, implementationResult);
-            } else {
-                register(createProperQualifiedName(service), currentClass);
+        for (AnnotationMirror annotation : findAnnotationMirrors(currentClass, getAnnotationClass().getName())) {
+            ProviderAttributes attributes = findAttributes(annotation);
+            for (AnnotationValue value : findCollectionValueMember(annotation, "value")) {
+                TypeElement service = toElement(value);
+                start = stats.start();
+                CheckResult implementationResult = isImplementation(currentClass, service);
+                stats.record(getStatsName(), ProcessorStats.Phase.VALIDATION, start);
+                if (implementationResult.isError()) {
+                    reportError(currentClass, implementationResult);
+                } else {
+                    register(createProperQualifiedName(service), currentClass, attributes);
+                }
             }
         }
     }
@@ -173,19 +187,10 @@ public class ServiceProviderProcessor extends AbstractSpiProcessor {
         return CheckResult.OK;
     }
 
-    private List<TypeElement> findServices(TypeElement classElement) {
-        List<TypeElement> services = new ArrayList<TypeElement>();
-
-        for (AnnotationMirror annotation : findAnnotationMirrors(classElement, getAnnotationClass().getName())) {
-            for (AnnotationValue value : findCollectionValueMember(annotation, "value")) {
-                services.add(toElement(value));
-            }
-        }
-
-        return services;
-    }
-
-    private void register(String serviceName, TypeElement provider) {
-        data.getService(serviceName).addProvider(createProperQualifiedName(provider));
+    private void register(String serviceName, TypeElement provider, ProviderAttributes attributes) {
+        String providerName = createProperQualifiedName(provider);
+        addOriginatingElement(providerName, provider);
+        data.getService(serviceName).addProvider(providerName, attributes);
+        stats.count(getStatsName(), ProcessorStats.Counter.PROVIDERS, 1);
     }
 }
\ No newline at end of file
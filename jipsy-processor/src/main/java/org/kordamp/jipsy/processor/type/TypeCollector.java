@@ -17,89 +17,33 @@
  */
 package org.kordamp.jipsy.processor.type;
 
+import org.kordamp.jipsy.processor.AbstractCollector;
 import org.kordamp.jipsy.processor.Initializer;
-import org.kordamp.jipsy.processor.LogLocation;
 import org.kordamp.jipsy.processor.Logger;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * @author Andres Almiray
  */
-public final class TypeCollector {
-    private final Map<String, Type> types = new LinkedHashMap<>();
-    private final Map<String, Type> cached = new LinkedHashMap<>();
-
-    private final List<String> removed = new ArrayList<>();
-    private final Initializer initializer;
-    private final Logger logger;
-
+public final class TypeCollector extends AbstractCollector<Type> {
     public TypeCollector(Initializer initializer, Logger logger) {
-        this.initializer = initializer;
-        this.logger = logger;
+        super(initializer, logger);
     }
 
-    public void cache() {
-        this.cached.putAll(types);
-    }
-
-    public boolean isModified() {
-        if (cached.size() != types.size()) {
-            return true;
-        }
-
-        for (Map.Entry<String, Type> e : cached.entrySet()) {
-            if (!types.containsKey(e.getKey())) {
-                return true;
-            }
-            if (!e.getValue().equals(types.get(e.getKey()))) {
-                return true;
-            }
-        }
-
-        return false;
+    @Override
+    protected Type newEntry(String name) {
+        return new Type(logger, name);
     }
 
     public Type getType(String type) {
         if (type == null) {
             throw new NullPointerException("type");
         }
-        if (!types.containsKey(type)) {
-            Type newType = new Type(logger, type);
-            CharSequence initialData = initializer.initialData(type);
-            if (initialData != null) {
-                newType.fromProviderNamesList(initialData.toString());
-                for (String provider : removed) {
-                    newType.removeProvider(provider);
-                }
-            }
-            types.put(type, newType);
-        }
-        return types.get(type);
+        return getEntry(type);
     }
 
     public Collection<Type> types() {
-        return Collections.unmodifiableMap(types).values();
-    }
-
-    public void removeProvider(String provider) {
-        if (provider == null) {
-            throw new NullPointerException("provider");
-        }
-        logger.note(LogLocation.LOG_FILE, "Removing " + provider);
-        removed.add(provider);
-        for (Type type : types.values()) {
-            type.removeProvider(provider);
-        }
-    }
-
-    @Override
-    public String toString() {
-        return types.values().toString();
+        return entries();
     }
 }
@@ -18,16 +18,17 @@
 package org.kordamp.jipsy.processor.type;
 
 import org.kordamp.jipsy.annotations.TypeProviderFor;
-import org.kordamp.jipsy.processor.AbstractSpiProcessor;
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.format.ProviderAttributes;
+import org.kordamp.jipsy.processor.AbstractAnnotationSpiProcessor;
 import org.kordamp.jipsy.processor.CheckResult;
 import org.kordamp.jipsy.processor.LogLocation;
 import org.kordamp.jipsy.processor.Options;
 import org.kordamp.jipsy.processor.Persistence;
+import org.kordamp.jipsy.processor.ProcessorStats;
 
-import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedOptions;
-import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
@@ -36,20 +37,21 @@ import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic.Kind;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * @author Andres Almiray
  */
 @SupportedAnnotationTypes("*")
-@SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION})
-public class TypeProviderProcessor extends AbstractSpiProcessor {
+@SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION,
+    Options.SPI_LOG_MAX_SIZE_OPTION, Options.SPI_LOG_MAX_FILES_OPTION, Options.SPI_STATS_OPTION,
+    Options.SPI_REGISTRY_OPTION, Options.SPI_INDEX_OPTION})
+public class TypeProviderProcessor extends AbstractAnnotationSpiProcessor {
     public static final String NAME = TypeProviderProcessor.class.getName()
         + " (" + TypeProviderProcessor.class.getPackage().getImplementationVersion() + ")";
 
-    private static final int MAX_SUPPORTED_VERSION = 21;
+    public static final String REGISTRY_CLASS_NAME = "JipsyTypeRegistry";
 
     private Persistence persistence;
     private TypeCollector data;
@@ -60,36 +62,17 @@ public class TypeProviderProcessor extends AbstractSpiProcessor {
     }
 
     @Override
-    public SourceVersion getSupportedSourceVersion() {
-        SourceVersion[] svs = SourceVersion.values();
-        for (int i = svs.length - 1; i >= 0; i--) {
-            String name = svs[i].name();
-            Matcher m = RELEASE_PATTERN.matcher(name);
-            if (m.matches()) {
-                int release = Integer.parseInt(m.group(1));
-                if (release <= MAX_SUPPORTED_VERSION) return svs[i];
-            }
-        }
-
-        return SourceVersion.RELEASE_6;
-    }
-
-    @Override
-    protected void initialize() {
-        super.initialize();
-
+    protected void initializeData() {
         persistence = new TypePersistence(NAME, options.dir(), processingEnv.getFiler(), logger);
         data = new TypeCollector(persistence.getInitializer(), logger);
 
-        // Initialize if possible
-        for (String typeName : persistence.tryFind()) {
-            data.getType(typeName);
-        }
-        data.cache();
+        // Existing files are only read when needed
+        data.addExisting(persistence.tryFind());
     }
 
     @Override
     protected void writeData() {
+        data.loadPending();
         if (data.isModified()) {
             if (data.types().isEmpty()) {
                 logger.note(LogLocation.LOG_FILE, "Writing output");
@@ -101,27 +84,50 @@ public class TypeProviderProcessor extends AbstractSpiProcessor {
             } else {
                 logger.note(LogLocation.LOG_FILE, "Writing output");
                 for (Type type : data.types()) {
+                    if (!type.isModified()) {
+                        logger.note(LogLocation.LOG_FILE, "Keeping unchanged %s", type.getName());
+                        continue;
+                    }
                     try {
-                        persistence.write(type.getName(), type.toProviderNamesList());
+                        persistence.write(type.getName(), type.lines(), getOriginatingElements(type.providers()));
                     } catch (IOException e) {
                         processingEnv.getMessager().printMessage(Kind.ERROR, e.getMessage());
                     }
                 }
-                persistence.writeLog();
             }
         }
+        persistence.writeState(data.types());
+        writeRegistryMarker(NAME, REGISTRY_CLASS_NAME, "types", data.types(), false);
+        recordStats(persistence);
     }
 
     @Override
-    protected void removeStaleData(RoundEnvironment roundEnv) {
-        for (Element e : roundEnv.getRootElements()) {
-            if (e instanceof TypeElement) {
-                TypeElement currentClass = (TypeElement) e;
-                data.removeProvider(createProperQualifiedName(currentClass));
-            }
+    protected void roundCompleted() {
+        if (options.registry() != null) {
+            data.loadAll();
+            generateRegistry(NAME, REGISTRY_CLASS_NAME, data.types(), false);
         }
     }
 
+    @Override
+    protected void addToIndex(BinaryIndex.Builder index, Collection<Element> originatingElements) {
+        data.loadAll();
+        persistence.addToIndex(index, options.dir(), data.types());
+        for (Type entry : data.types()) {
+            Collections.addAll(originatingElements, getOriginatingElements(entry.providers()));
+        }
+    }
+
+    @Override
+    protected boolean hasKnownProviders() {
+        return data.hasProviders();
+    }
+
+    @Override
+    protected void removeProvider(String provider) {
+        data.removeProvider(provider);
+    }
+
     @Override
     protected void handleElement(Element e) {
         if (!(e instanceof TypeElement)) {
@@ -129,25 +135,31 @@ public class TypeProviderProcessor extends AbstractSpiProcessor {
         }
 
         TypeElement currentClass = (TypeElement) e;
+        stats.count(getStatsName(), ProcessorStats.Counter.ANNOTATED_ELEMENTS, 1);
 
+        long start = stats.start();
         CheckResult checkResult = checkCurrentClass(currentClass);
+        stats.record(getStatsName(), ProcessorStats.Phase.VALIDATION, start);
         if (checkResult.isError()) {
             reportError(currentClass, checkResult);
             return;
         }
 
-        for (TypeElement type : findTypes(currentClass)) {
+        for (AnnotationMirror annotation : findAnnotationMirrors(currentClass, getAnnotationClass().getName())) {
+            TypeElement type = toElement(findSingleValueMember(annotation, "value"));
+            start = stats.start();
             CheckResult implementationResult = isImplementation(currentClass, type);
+            stats.record(getStatsName(), ProcessorStats.Phase.VALIDATION, start);
             if (implementationResult.isError()) {
                 reportError(currentClass, implementationResult);
             } else {
-                register(createProperQualifiedName(type), currentClass);
+                register(createProperQualifiedName(type), currentClass, findAttributes(annotation));
             }
         }
     }
 
     private CheckResult checkCurrentClass(TypeElement currentClass) {
-        if (currentClass.getKind() != ElementKind.CLASS || currentClass.getKind() != ElementKind.INTERFACE) {
+        if (currentClass.getKind() != ElementKind.CLASS && currentClass.getKind() != ElementKind.INTERFACE) {
             return CheckResult.valueOf("is not a class nor an interface");
         }
 
@@ -158,17 +170,10 @@ public class TypeProviderProcessor extends AbstractSpiProcessor {
         return CheckResult.OK;
     }
 
-    private List<TypeElement> findTypes(TypeElement classElement) {
-        List<TypeElement> types = new ArrayList<>();
-
-        for (AnnotationMirror annotation : findAnnotationMirrors(classElement, getAnnotationClass().getName())) {
-            types.add(toElement(findSingleValueMember(annotation, "value")));
-        }
-
-        return types;
-    }
-
-    private void register(String typeName, TypeElement provider) {
-        data.getType(typeName).addProvider(createProperQualifiedName(provider));
+    private void register(String typeName, TypeElement provider, ProviderAttributes attributes) {
+        String providerName = createProperQualifiedName(provider);
+        addOriginatingElement(providerName, provider);
+        data.getType(typeName).addProvider(providerName, attributes);
+        stats.count(getStatsName(), ProcessorStats.Counter.PROVIDERS, 1);
     }
 }
\ No newline at end of file
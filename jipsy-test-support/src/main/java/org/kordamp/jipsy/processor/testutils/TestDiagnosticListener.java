@@ -59,10 +59,18 @@ public class TestDiagnosticListener implements DiagnosticListener<JavaFileObject
     }
 
     public static List<Diagnostic<JavaFileObject>> compile(Processor processor, FileType type, String... fileNames) throws IOException {
+        return compile(processor, OutputDir.getOptions(), null, TestJavaFileObject.read(type, fileNames));
+    }
+
+    public static List<Diagnostic<JavaFileObject>> compile(Processor processor, Iterable<String> options, Iterable<String> classes, Iterable<? extends JavaFileObject> sources) {
+        return compile(Collections.singleton(processor), options, classes, sources);
+    }
+
+    public static List<Diagnostic<JavaFileObject>> compile(Iterable<? extends Processor> processors, Iterable<String> options, Iterable<String> classes, Iterable<? extends JavaFileObject> sources) {
         JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
         TestDiagnosticListener listener = new TestDiagnosticListener();
-        CompilationTask task = compiler.getTask(null, null, listener, OutputDir.getOptions(), null, TestJavaFileObject.read(type, fileNames));
-        task.setProcessors(Collections.singleton(processor));
+        CompilationTask task = compiler.getTask(null, null, listener, options, classes, sources);
+        task.setProcessors(processors);
         task.call();
         return listener.diagnostics();
     }
@@ -37,11 +37,15 @@ package org.kordamp.jipsy.processor.testutils;
 
 import org.kordamp.jipsy.processor.Initializer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public final class TestInitializer implements Initializer {
 
     private final Map<String, String> data;
+    private final List<String> requested = new ArrayList<String>();
 
     public TestInitializer(Map<String, String> data) {
         this.data = data;
@@ -49,6 +53,11 @@ public final class TestInitializer implements Initializer {
 
     @Override
     public CharSequence initialData(String name) {
+        requested.add(name);
         return data.get(name);
     }
+
+    public List<String> requested() {
+        return Collections.unmodifiableList(requested);
+    }
 }
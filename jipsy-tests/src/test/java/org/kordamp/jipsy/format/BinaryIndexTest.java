@@ -0,0 +1,131 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andres Almiray
+ */
+public class BinaryIndexTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        BinaryIndex.Builder builder = new BinaryIndex.Builder()
+            .add("META-INF/services", "org.acme.Service", "# Generated\norg.acme.One #@priority=2;qualifiers=fast\norg.acme.Two\n")
+            .add("META-INF/services/", "org.acme.Other", "org.acme.One\n")
+            .add("META-INF/types/", "org.acme.Type", "org.acme.T\u00e9\n")
+            .section("META-INF/sisu/");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long bytes = builder.write(out);
+        assertEquals(out.size(), bytes);
+
+        BinaryIndex index = BinaryIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(Arrays.asList("META-INF/services/", "META-INF/sisu/", "META-INF/types/"), index.paths());
+        assertEquals(Arrays.asList("org.acme.One", "org.acme.Two"), index.get("META-INF/services", "org.acme.Service"));
+        assertEquals(Collections.singletonList("org.acme.One"), index.get("META-INF/services/", "org.acme.Other"));
+        assertEquals(Collections.singletonList("org.acme.T\u00e9"), index.get("META-INF/types", "org.acme.Type"));
+        assertEquals(Arrays.asList("org.acme.Other", "org.acme.Service"), index.names("META-INF/services"));
+
+        List<ProviderAttributes> attributes = index.getAttributes("META-INF/services", "org.acme.Service");
+        assertEquals(ProviderAttributes.of("", 2, Collections.singletonList("fast")), attributes.get(0));
+        assertEquals(ProviderAttributes.NONE, attributes.get(1));
+
+        assertTrue(index.covers("META-INF/sisu"));
+        assertNull(index.get("META-INF/sisu", "javax.inject.Named"));
+        assertNull(index.get("META-INF/services", "org.acme.Missing"));
+        assertNull(index.getAttributes("META-INF/services", "org.acme.Missing"));
+        assertFalse(index.covers("META-INF/other"));
+        assertNull(index.get("META-INF/other", "org.acme.Service"));
+    }
+
+    @Test
+    public void testMatches() throws IOException {
+        String content = "org.acme.T\u00e9\n";
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryIndex.Builder().add("META-INF/types", "a.B", content).write(out);
+
+        BinaryIndex index = BinaryIndex.read(ByteBuffer.wrap(out.toByteArray()));
+        assertTrue(index.matches("META-INF/types", "a.B", bytes.length, crc.getValue()));
+        assertTrue(index.matches("META-INF/types", "a.B", bytes.length, -1));
+        assertFalse(index.matches("META-INF/types", "a.B", content.length(), -1));
+        assertFalse(index.matches("META-INF/types", "a.B", bytes.length, crc.getValue() + 1));
+        assertFalse(index.matches("META-INF/types", "a.C", bytes.length, -1));
+    }
+
+    @Test
+    public void testEmptyIndexCoversNothing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryIndex.Builder().write(out);
+
+        BinaryIndex index = BinaryIndex.read(ByteBuffer.wrap(out.toByteArray()));
+        assertTrue(index.paths().isEmpty());
+        assertNull(index.get("META-INF/services", "org.acme.Service"));
+    }
+
+    @Test
+    public void testReadFromBufferPosition() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{1, 2, 3});
+        new BinaryIndex.Builder().add("META-INF/types", "a.B", "a.C\n").write(out);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray()).position(3);
+        assertEquals(Collections.singletonList("a.C"), BinaryIndex.read(buffer).get("META-INF/types", "a.B"));
+    }
+
+    @Test
+    public void testCorruptedIndex() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryIndex.Builder().add("META-INF/types", "a.B", "a.C\n").write(out);
+        byte[] bytes = out.toByteArray();
+
+        byte[] flipped = bytes.clone();
+        flipped[12] ^= 1;
+        assertUnreadable(flipped);
+        assertUnreadable(Arrays.copyOf(bytes, bytes.length - 1));
+        assertUnreadable(new byte[0]);
+    }
+
+    private static void assertUnreadable(byte[] bytes) {
+        try {
+            BinaryIndex.read(ByteBuffer.wrap(bytes));
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import org.junit.Test;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Andres Almiray
+ */
+public class IndexReaderTest extends NoOutputTestBase {
+    @Test
+    public void testLineTerminators() throws IOException {
+        assertEquals(Arrays.asList("a", "b", "c", "d"), parse("a\nb\r\nc\rd"));
+        assertEquals(Arrays.asList("a", "b"), parse("a\r\n\r\nb\r\n"));
+    }
+
+    @Test
+    public void testSkipsCommentsAndBlankLines() throws IOException {
+        assertEquals(Arrays.asList("a", "b"), parse("# Generated by x\n\na\n \t \n # comment\nb\n#"));
+        assertEquals(Collections.emptyList(), parse(""));
+    }
+
+    @Test
+    public void testStripsWhitespaceAndTrailingComments() throws IOException {
+        assertEquals(Arrays.asList("a.B", "c.D", "e.F"), parse("  a.B  \n\tc.D # trailing\ne.F#x\n"));
+    }
+
+    @Test
+    public void testReadsCharacters() throws IOException {
+        final List<String> entries = new ArrayList<>();
+        IndexReader reader = new IndexReader(3);
+        reader.read(new StringReader("a\r\nb # c\r\n\u00e9\n"), entry -> entries.add(entry.toString()));
+        reader.read("d\n\ne", entry -> entries.add(entry.toString()));
+        assertEquals(Arrays.asList("a", "b", "\u00e9", "d", "e"), entries);
+    }
+
+    @Test
+    public void testAttributedEntries() throws IOException {
+        final List<String> entries = new ArrayList<>();
+        IndexReader.AttributedEntryHandler handler = (entry, attributes) -> entries.add(entry + "|" + attributes);
+        new IndexReader(4).read(new ByteArrayInputStream(
+            "# header\na.B #@ name=x \nc.D # plain\ne.F#@\ng.H\n#@name=y\ni.J #@a#b".getBytes(StandardCharsets.UTF_8)), handler);
+        assertEquals(Arrays.asList("a.B|name=x", "c.D|null", "e.F|null", "g.H|null", "i.J|a#b"), entries);
+    }
+
+    @Test
+    public void testReadLinesKeepsContent() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        IndexReader reader = new IndexReader(4);
+        reader.readLines(new ByteArrayInputStream(
+            "# header\n  key = value # kept \n\n   \r\nurl=http://host/#fragment\r\n #indented".getBytes(StandardCharsets.UTF_8)),
+            entry -> lines.add(entry.toString()));
+        assertEquals(Arrays.asList("  key = value # kept ", "url=http://host/#fragment", " #indented"), lines);
+
+        // the same reader still parses index files afterwards
+        assertEquals(Collections.singletonList("a.B"), parse(reader, "a.B # comment".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testParseAttributes() {
+        assertEquals("name=x", IndexReader.parseAttributes(" a.B #@ name=x "));
+        assertNull(IndexReader.parseAttributes("a.B # name=x"));
+        assertNull(IndexReader.parseAttributes("a.B #@"));
+        assertNull(IndexReader.parseAttributes("a.B"));
+    }
+
+    @Test
+    public void testParseEntry() {
+        assertEquals("a.B", IndexReader.parseEntry(" a.B # comment"));
+        assertNull(IndexReader.parseEntry("  # comment"));
+        assertNull(IndexReader.parseEntry(" \t "));
+    }
+
+    @Test
+    public void testEntrySubSequence() throws IOException {
+        final List<String> entries = new ArrayList<>();
+        new IndexReader().read("  abcd  ", entry -> {
+            assertEquals(4, entry.length());
+            assertEquals('b', entry.charAt(1));
+            entries.add(entry.subSequence(1, 3).toString());
+        });
+        assertEquals(Collections.singletonList("bc"), entries);
+    }
+
+    @Test
+    public void testMultiByteCharactersAcrossBufferBoundaries() throws IOException {
+        String text = "caf\u00e9.Provider\n\u4e2d\u6587.Impl\n\ud83d\ude00.Emoji\r\n";
+        for (int size = 1; size <= 8; size++) {
+            assertEquals(Arrays.asList("caf\u00e9.Provider", "\u4e2d\u6587.Impl", "\ud83d\ude00.Emoji"),
+                parse(text.getBytes(StandardCharsets.UTF_8), size));
+        }
+    }
+
+    @Test
+    public void testCarriageReturnAtBufferBoundary() throws IOException {
+        assertEquals(Arrays.asList("ab", "cd"), parse("ab\r\ncd".getBytes(StandardCharsets.UTF_8), 3));
+    }
+
+    @Test
+    public void testMalformedInputIsReplaced() throws IOException {
+        byte[] bytes = {'a', (byte) 0xC3, '\n', (byte) 0xFF, 'b', '\n', (byte) 0xC0, (byte) 0x80, '\n', 'c', (byte) 0xE4};
+        assertEquals(Arrays.asList("a\uFFFD", "\uFFFDb", "\uFFFD\uFFFD", "c\uFFFD"), parse(bytes, 4));
+    }
+
+    @Test
+    public void testLongLinesGrowBuffer() throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            b.append("x");
+        }
+        assertEquals(Collections.singletonList(b.toString()), parse(b.toString()));
+    }
+
+    @Test
+    public void testParserCanBeReused() throws IOException {
+        IndexReader reader = new IndexReader(2);
+        assertEquals(Collections.singletonList("a"), parse(reader, "a\r".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Collections.singletonList("b"), parse(reader, "\nb".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList("c", "\uFFFD"), parse(reader, new byte[]{'c', '\n', (byte) 0xE4}));
+        assertEquals(Collections.singletonList("d"), parse(reader, "d".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize() {
+        new IndexReader(0);
+    }
+
+    private static List<String> parse(String text) throws IOException {
+        return parse(text.getBytes(StandardCharsets.UTF_8), 8192);
+    }
+
+    private static List<String> parse(byte[] bytes, int bufferSize) throws IOException {
+        return parse(new IndexReader(bufferSize), bytes);
+    }
+
+    private static List<String> parse(IndexReader reader, byte[] bytes) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(bytes), entry -> lines.add(entry.toString()));
+        return lines;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import org.junit.Test;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Andres Almiray
+ */
+public class IndexWriterTest extends NoOutputTestBase {
+    @Test
+    public void testWrite() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        long bytes = IndexWriter.write(sb, "Generator", Arrays.asList("a.B", "c\u00e9.D"));
+        assertEquals("# Generated by Generator\na.B\nc\u00e9.D\n", sb.toString());
+        assertEquals(sb.toString().getBytes(StandardCharsets.UTF_8).length, bytes);
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("", IndexWriter.toString(Collections.<String>emptyList()));
+        assertEquals("a\nb\n", IndexWriter.toString(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void testUtf8Length() {
+        for (String s : Arrays.asList("", "abc", "\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "x\ud83dy", "\ude00")) {
+            assertEquals(s, s.getBytes(StandardCharsets.UTF_8).length, IndexWriter.utf8Length(s));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        SortedProviderSet providers = new SortedProviderSet(Arrays.asList("org.b.Two", "org.a.One", "org.c.Three"));
+        StringBuilder sb = new StringBuilder();
+        IndexWriter.write(sb, "Generator", providers);
+
+        final List<String> read = new ArrayList<>();
+        new IndexReader().read(sb, entry -> read.add(entry.toString()));
+        assertEquals(new ArrayList<>(providers), read);
+    }
+}
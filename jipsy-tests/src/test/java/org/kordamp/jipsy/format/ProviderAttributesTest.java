@@ -0,0 +1,71 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class ProviderAttributesTest {
+    @Test
+    public void testDefaultsAreNone() {
+        assertSame(ProviderAttributes.NONE, ProviderAttributes.of("", 0, Collections.<String>emptyList()));
+        assertSame(ProviderAttributes.NONE, ProviderAttributes.of("", 0, Collections.singletonList("")));
+        assertSame(ProviderAttributes.NONE, ProviderAttributes.parse(null));
+        assertSame(ProviderAttributes.NONE, ProviderAttributes.parse(""));
+        assertEquals("", ProviderAttributes.NONE.toString());
+        assertEquals("a.B", ProviderAttributes.line("a.B", ProviderAttributes.NONE));
+    }
+
+    @Test
+    public void testFormat() {
+        ProviderAttributes attributes = ProviderAttributes.of("basic", 10, Arrays.asList("fast", "local", "fast"));
+        assertEquals("name=basic;priority=10;qualifiers=fast,local", attributes.toString());
+        assertEquals("a.B #@name=basic;priority=10;qualifiers=fast,local", ProviderAttributes.line("a.B", attributes));
+        assertEquals("priority=-1", ProviderAttributes.of("", -1, Collections.<String>emptyList()).toString());
+        assertEquals("qualifiers=x", ProviderAttributes.of("", 0, Collections.singletonList("x")).toString());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ProviderAttributes attributes = ProviderAttributes.of("a;b=c, d#e%f", 3, Arrays.asList("x,y", "z\u00e9"));
+        assertFalse(attributes.toString().contains("#"));
+        assertFalse(attributes.toString().contains(" "));
+        assertEquals(attributes, ProviderAttributes.parse(attributes.toString()));
+        assertEquals("a;b=c, d#e%f", ProviderAttributes.parse(attributes.toString()).getName());
+        assertTrue(ProviderAttributes.parse(attributes.toString()).hasQualifier("x,y"));
+    }
+
+    @Test
+    public void testParseIsLenient() {
+        ProviderAttributes attributes = ProviderAttributes.parse(" name = n ;priority=high;color=red;;qualifiers=a, b;%");
+        assertEquals("n", attributes.getName());
+        assertEquals(0, attributes.getPriority());
+        assertEquals(Arrays.asList("a", "b"), attributes.getQualifiers());
+        assertEquals("%4", ProviderAttributes.parse("name=%4").getName());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.format;
+
+import org.junit.Test;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class SortedProviderSetTest extends NoOutputTestBase {
+    @Test
+    public void testKeepsNamesSorted() {
+        SortedProviderSet set = new SortedProviderSet();
+        assertTrue(set.add("c.C"));
+        assertTrue(set.add("a.A"));
+        assertTrue(set.add("b.B"));
+        assertFalse(set.add("a.A"));
+        assertEquals(Arrays.asList("a.A", "b.B", "c.C"), new ArrayList<>(set));
+        assertEquals("b.B", set.get(1));
+        assertTrue(set.contains("c.C"));
+        assertFalse(set.contains("d.D"));
+        assertFalse(set.contains(42));
+    }
+
+    @Test
+    public void testRemove() {
+        SortedProviderSet set = new SortedProviderSet(Arrays.asList("c", "a", "b", "d"));
+        assertTrue(set.remove("b"));
+        assertFalse(set.remove("b"));
+        Iterator<String> it = set.iterator();
+        assertEquals("a", it.next());
+        it.remove();
+        assertEquals("c", it.next());
+        assertEquals(Arrays.asList("c", "d"), new ArrayList<>(set));
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testConcurrentModification() {
+        SortedProviderSet set = new SortedProviderSet(Arrays.asList("a", "b"));
+        Iterator<String> it = set.iterator();
+        it.next();
+        set.add("c");
+        it.next();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testRejectsNull() {
+        new SortedProviderSet().add(null);
+    }
+
+    @Test
+    public void testMatchesTreeSet() {
+        Random random = new Random(42);
+        SortedProviderSet set = new SortedProviderSet();
+        TreeSet<String> expected = new TreeSet<>();
+        for (int i = 0; i < 2000; i++) {
+            String name = "p" + random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(name), set.remove(name));
+            } else {
+                assertEquals(expected.add(name), set.add(name));
+            }
+        }
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void testEquals() {
+        SortedProviderSet set = new SortedProviderSet(Arrays.asList("a", "b"));
+        SortedProviderSet copy = new SortedProviderSet(set);
+        assertEquals(set, copy);
+        assertEquals(set, new HashSet<>(Arrays.asList("b", "a")));
+        copy.add("c");
+        assertFalse(set.equals(copy));
+        copy.remove("a");
+        assertFalse(set.equals(copy));
+        assertFalse(set.equals(new SortedProviderSet(Collections.<String>emptyList())));
+    }
+
+    @Test
+    public void testToArray() {
+        SortedProviderSet set = new SortedProviderSet(Arrays.asList("b", "a"));
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(set.toArray()));
+        List<String> list = Arrays.asList(set.toArray(new String[0]));
+        assertEquals(Arrays.asList("a", "b"), list);
+    }
+}
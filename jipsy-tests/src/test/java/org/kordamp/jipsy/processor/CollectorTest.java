@@ -44,7 +44,9 @@ import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
 import org.kordamp.jipsy.processor.testutils.TestInitializer;
 import org.kordamp.jipsy.processor.testutils.TestLogger;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 
 import static org.junit.Assert.assertEquals;
@@ -202,6 +204,103 @@ public class CollectorTest extends NoOutputTestBase {
         assertEquals(2, logger.records().size());
     }
 
+    @Test
+    public void testRemoveProviderOnlyTouchesItsServices() {
+        Service service1 = collector.getService("service1");
+        Service service2 = collector.getService("service2");
+        Service service3 = collector.getService("service3");
+        collector.removeProvider("provider3");
+        assertTrue(service1.contains("provider1"));
+        assertTrue(service2.contains("provider2"));
+        Assert.assertFalse(service3.contains("provider3"));
+        assertTrue(service3.contains("provider1"));
+    }
+
+    @Test
+    public void testRemoveProviderAddedDirectly() {
+        Service service = collector.getService("service");
+        service.addProvider("provider4");
+        collector.removeProvider("provider4");
+        Assert.assertFalse(service.contains("provider4"));
+    }
+
+    @Test
+    public void testHasProviders() {
+        Assert.assertFalse(collector.hasProviders());
+        collector.getService("service");
+        Assert.assertFalse(collector.hasProviders());
+        collector.getService("service1");
+        assertTrue(collector.hasProviders());
+        collector.removeProvider("provider1");
+        Assert.assertFalse(collector.hasProviders());
+    }
+
+    @Test
+    public void testNotModifiedAfterLoading() {
+        collector.getService("service1");
+        collector.getService("service2");
+        Assert.assertFalse(collector.isModified());
+    }
+
+    @Test
+    public void testModifiedOnlyWhereContentChanges() {
+        Service service1 = collector.getService("service1");
+        Service service2 = collector.getService("service2");
+        service1.addProvider("provider1");
+        service2.addProvider("provider0");
+        Assert.assertFalse(service1.isModified());
+        assertTrue(service2.isModified());
+        assertTrue(collector.isModified());
+    }
+
+    @Test
+    public void testModifiedBackToLoadedContent() {
+        Service service = collector.getService("service2");
+        collector.removeProvider("provider2");
+        assertTrue(service.isModified());
+        service.addProvider("provider2");
+        Assert.assertFalse(service.isModified());
+    }
+
+    @Test
+    public void testNewServiceModifiedOnlyWithProviders() {
+        Service service = collector.getService("service");
+        Assert.assertFalse(service.isModified());
+        service.addProvider("provider1");
+        assertTrue(service.isModified());
+    }
+
+    @Test
+    public void testExistingNotReadUntilRequested() {
+        collector.addExisting(Arrays.asList("service1", "service2"));
+        assertTrue(collector.hasProviders());
+        assertTrue(initializer.requested().isEmpty());
+
+        Service service = collector.getService("service2");
+        assertTrue(service.contains("provider2"));
+        assertEquals(Collections.singletonList("service2"), initializer.requested());
+    }
+
+    @Test
+    public void testLoadPendingWithoutRemovals() {
+        collector.addExisting(Arrays.asList("service1", "service2"));
+        collector.loadPending();
+        assertTrue(initializer.requested().isEmpty());
+        assertTrue(collector.services().isEmpty());
+    }
+
+    @Test
+    public void testLoadPendingAfterRemoval() {
+        collector.addExisting(Arrays.asList("service1", "service2", "service3"));
+        collector.removeProvider("provider2");
+        collector.loadPending();
+        assertEquals(3, collector.services().size());
+        Service service2 = collector.getService("service2");
+        Assert.assertFalse(service2.contains("provider2"));
+        assertTrue(service2.isModified());
+        Assert.assertFalse(collector.getService("service3").isModified());
+    }
+
     @Test
     public void testToStringEmpty() {
         collector.toString();
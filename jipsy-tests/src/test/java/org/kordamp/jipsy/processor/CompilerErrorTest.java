@@ -40,6 +40,7 @@ import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
 import org.kordamp.jipsy.processor.testutils.FileType;
 import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
 import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.type.TypeProviderProcessor;
 
 import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
@@ -150,6 +151,29 @@ public class CompilerErrorTest extends NoOutputTestBase {
         assertEquals("AnnotationTestClass is not a class", getMessage(diagnostic));
     }
 
+    @Test
+    public void testTypeProviderEnumNotAllowed() throws IOException {
+        List<Diagnostic<JavaFileObject>> list = compileTypes(FileType.INVALID, "TypeEnumTestClass");
+        assertEquals(1, list.size());
+
+        Diagnostic<JavaFileObject> diagnostic = list.get(0);
+        assertEquals(Kind.ERROR, diagnostic.getKind());
+        assertEquals(23, diagnostic.getLineNumber());
+        assertEquals("TypeEnumTestClass is not a class nor an interface", getMessage(diagnostic));
+    }
+
+    @Test
+    public void testTypeProviderInterfaceIsChecked() throws IOException {
+        // interfaces pass the kind check and fail on the missing implementation instead
+        List<Diagnostic<JavaFileObject>> list = compileTypes(FileType.INVALID, "TypeNoImplementationTestClass");
+        assertEquals(1, list.size());
+
+        Diagnostic<JavaFileObject> diagnostic = list.get(0);
+        assertEquals(Kind.ERROR, diagnostic.getKind());
+        assertEquals(23, diagnostic.getLineNumber());
+        assertEquals("TypeNoImplementationTestClass does not implement java.util.RandomAccess", getMessage(diagnostic));
+    }
+
     private static String getMessage(Diagnostic<JavaFileObject> diagnostic) {
         String msg = diagnostic.getMessage(null);
         int first = msg.indexOf(':');
@@ -160,4 +184,8 @@ public class CompilerErrorTest extends NoOutputTestBase {
     private static List<Diagnostic<JavaFileObject>> compile(FileType type, String... fileNames) throws IOException {
         return TestDiagnosticListener.compile(new ServiceProviderProcessor(), type, fileNames);
     }
+
+    private static List<Diagnostic<JavaFileObject>> compileTypes(FileType type, String... fileNames) throws IOException {
+        return TestDiagnosticListener.compile(new TypeProviderProcessor(), type, fileNames);
+    }
 }
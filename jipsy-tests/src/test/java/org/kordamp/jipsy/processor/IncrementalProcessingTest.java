@@ -0,0 +1,231 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulates the partial recompilations performed by incremental builds such as Gradle's.
+ *
+ * @author Andres Almiray
+ */
+public class IncrementalProcessingTest extends NoOutputTestBase {
+    private static final String SERVICE_FILE = "META-INF/services/java.lang.Runnable";
+
+    private File outputDir;
+
+    @Before
+    public void setupOutputDir() {
+        outputDir = new File("target/incremental-test/" + System.nanoTime());
+        assertTrue(outputDir.mkdirs());
+    }
+
+    @Test
+    public void testPartialRecompileKeepsUnchangedProviders() throws IOException {
+        assertCompiles(null, provider("ProviderA"), provider("ProviderB"));
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), readProviders());
+
+        assertCompiles(null, provider("ProviderB"));
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), readProviders());
+    }
+
+    @Test
+    public void testPartialRecompileRemovesStaleProvider() throws IOException {
+        assertCompiles(null, provider("ProviderA"), provider("ProviderB"));
+
+        assertCompiles(null, TestJavaFileObject.create("ProviderB",
+            "public class ProviderB implements Runnable {\n    public void run() { }\n}"));
+        assertEquals(Collections.singletonList("ProviderA"), readProviders());
+    }
+
+    @Test
+    public void testUnchangedServiceFileIsNotRewritten() throws IOException {
+        assertCompiles(null, provider("ProviderA"), provider("ProviderB"));
+        File file = new File(outputDir, SERVICE_FILE);
+        assertTrue(file.setLastModified(1000L));
+
+        assertCompiles(null, provider("ProviderB"));
+        assertEquals(1000L, file.lastModified());
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), readProviders());
+    }
+
+    @Test
+    public void testOnlyChangedServiceFileIsRewritten() throws IOException {
+        assertCompiles(null, provider("ProviderA"), TestJavaFileObject.create("Task",
+            "@org.kordamp.jipsy.annotations.ServiceProviderFor(java.util.concurrent.Callable.class)\n" +
+                "public class Task implements java.util.concurrent.Callable<String> {\n    public String call() { return null; }\n}"));
+        File runnables = new File(outputDir, SERVICE_FILE);
+        File callables = new File(outputDir, "META-INF/services/java.util.concurrent.Callable");
+        assertTrue(runnables.setLastModified(1000L));
+        assertTrue(callables.setLastModified(1000L));
+
+        assertCompiles(null, provider("ProviderB"));
+        assertEquals(1000L, callables.lastModified());
+        assertTrue(runnables.lastModified() != 1000L);
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), readProviders());
+    }
+
+    @Test
+    public void testWarmRecompileDetectsSameSizeEdits() throws IOException {
+        assertCompiles(null, provider("ProviderA"), provider("ProviderB"));
+        assertTrue(new File(outputDir, "META-INF/services.state").isFile());
+
+        // same size and timestamp: only the recorded CRC32 tells the contents apart
+        File file = new File(outputDir, SERVICE_FILE);
+        long lastModified = file.lastModified();
+        String content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        Files.write(file.toPath(), content.replace("ProviderA", "ProviderX").getBytes("UTF-8"));
+        assertTrue(file.setLastModified(lastModified));
+
+        assertCompiles(null, TestJavaFileObject.create("ProviderB",
+            "public class ProviderB implements Runnable {\n    public void run() { }\n}"));
+        assertEquals(Collections.singletonList("ProviderX"), readProviders());
+    }
+
+    @Test
+    public void testStaleStateFallsBackToServiceFile() throws IOException {
+        assertCompiles(null, provider("ProviderA"), provider("ProviderB"));
+
+        File file = new File(outputDir, SERVICE_FILE);
+        Files.write(file.toPath(), "ProviderA\nProviderB\nProviderC\n".getBytes("UTF-8"));
+
+        assertCompiles(null, TestJavaFileObject.create("ProviderB",
+            "public class ProviderB implements Runnable {\n    public void run() { }\n}"));
+        assertEquals(Arrays.asList("ProviderA", "ProviderC"), readProviders());
+    }
+
+    @Test
+    public void testAggregatingRecompileReprocessesUnchangedTypes() throws IOException {
+        assertCompiles(null, provider("ProviderA"), provider("ProviderB"));
+
+        // Gradle deletes the outputs of aggregating processors and hands the unchanged
+        // annotated types back to javac as class names to be reprocessed.
+        assertTrue(new File(outputDir, SERVICE_FILE).delete());
+        assertCompiles(Collections.singletonList("ProviderA"), provider("ProviderB"));
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), readProviders());
+    }
+
+    @Test
+    public void testAttributesAreWrittenAndKept() throws IOException {
+        assertCompiles(null, TestJavaFileObject.create("ProviderA",
+            "@org.kordamp.jipsy.annotations.ServiceProviderFor(value = Runnable.class, name = \"a\", priority = 5, qualifiers = {\"x\", \"y\"})\n" +
+                "public class ProviderA implements Runnable {\n    public void run() { }\n}"), provider("ProviderB"));
+        assertEquals(Arrays.asList("ProviderA #@name=a;priority=5;qualifiers=x,y", "ProviderB"), readProviders());
+
+        // warm: restored from the recorded state
+        assertCompiles(null, provider("ProviderB"));
+        assertEquals(Arrays.asList("ProviderA #@name=a;priority=5;qualifiers=x,y", "ProviderB"), readProviders());
+
+        // cold: read back from the service file
+        assertTrue(new File(outputDir, "META-INF/services.state").delete());
+        assertCompiles(null, provider("ProviderB"));
+        assertEquals(Arrays.asList("ProviderA #@name=a;priority=5;qualifiers=x,y", "ProviderB"), readProviders());
+
+        assertCompiles(null, TestJavaFileObject.create("ProviderA",
+            "@org.kordamp.jipsy.annotations.ServiceProviderFor(value = Runnable.class, priority = 1)\n" +
+                "public class ProviderA implements Runnable {\n    public void run() { }\n}"));
+        assertEquals(Arrays.asList("ProviderA #@priority=1", "ProviderB"), readProviders());
+    }
+
+    @Test
+    public void testProcessorsAreDeclaredAsAggregating() throws IOException {
+        List<String> declared = readLines(getClass().getClassLoader()
+            .getResource("META-INF/gradle/incremental.annotation.processors"));
+
+        URL processors = ServiceProviderProcessor.class.getClassLoader()
+            .getResource("META-INF/services/javax.annotation.processing.Processor");
+        List<String> registered = readLines(processors);
+        assertFalse(registered.isEmpty());
+        for (String processor : registered) {
+            assertTrue(processor, declared.contains(processor + ",aggregating"));
+        }
+    }
+
+    private void assertCompiles(List<String> classes, JavaFileObject... sources) {
+        List<String> options = Arrays.asList("-d", outputDir.getPath(),
+            "-classpath", outputDir.getPath() + File.pathSeparator + System.getProperty("java.class.path"));
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(
+            new ServiceProviderProcessor(), options, classes, Arrays.asList(sources));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+    }
+
+    private List<String> readProviders() throws IOException {
+        File file = new File(outputDir, SERVICE_FILE);
+        assertTrue(file.exists());
+        InputStream in = new FileInputStream(file);
+        try {
+            return readLines(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static JavaFileObject provider(String className) {
+        return TestJavaFileObject.create(className,
+            "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                "public class " + className + " implements Runnable {\n    public void run() { }\n}");
+    }
+
+    private static List<String> readLines(URL url) throws IOException {
+        assertNotNull(url);
+        InputStream in = url.openStream();
+        try {
+            return readLines(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> readLines(InputStream in) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
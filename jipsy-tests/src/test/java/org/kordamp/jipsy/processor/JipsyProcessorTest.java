@@ -0,0 +1,228 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+import org.kordamp.jipsy.processor.type.TypeProviderProcessor;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class JipsyProcessorTest extends NoOutputTestBase {
+    private File outputDir;
+
+    @Before
+    public void setupOutputDir() {
+        outputDir = new File("target/jipsy-test/" + System.nanoTime());
+        assertTrue(outputDir.mkdirs());
+    }
+
+    @Test
+    public void testAllKindsInOneCompilation() throws IOException {
+        List<Diagnostic<JavaFileObject>> diagnostics = compile(
+            TestJavaFileObject.create("ServiceProvider",
+                "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public class ServiceProvider implements Runnable {\n" +
+                    "    public void run() { }\n\n" +
+                    "    @org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "    public static class Inner implements Runnable {\n" +
+                    "        public void run() { }\n" +
+                    "    }\n" +
+                    "}"),
+            TestJavaFileObject.create("TypeProvider",
+                "@org.kordamp.jipsy.annotations.TypeProviderFor(Runnable.class)\n" +
+                    "public interface TypeProvider extends Runnable { }"),
+            TestJavaFileObject.create("SisuProvider",
+                "@org.kordamp.jipsy.annotations.SisuIndexFor(Runnable.class)\n" +
+                    "public class SisuProvider { }"));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        assertEquals(Arrays.asList("ServiceProvider", "ServiceProvider$Inner"), readProviders("META-INF/services/java.lang.Runnable"));
+        assertEquals(Collections.singletonList("TypeProvider"), readProviders("META-INF/types/java.lang.Runnable"));
+        assertEquals(Collections.singletonList("SisuProvider"), readProviders("META-INF/sisu/java.lang.Runnable"));
+    }
+
+    @Test
+    public void testErrorsAreReportedOnce() {
+        List<Diagnostic<JavaFileObject>> diagnostics = compile(
+            TestJavaFileObject.create("InvalidProvider",
+                "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public interface InvalidProvider extends Runnable { }"));
+        assertEquals(1, diagnostics.size());
+        assertEquals(Diagnostic.Kind.ERROR, diagnostics.get(0).getKind());
+    }
+
+    @Test
+    public void testStatsReport() throws IOException {
+        List<Diagnostic<JavaFileObject>> diagnostics = compile(Arrays.asList("-d", outputDir.getPath(), "-Aspi_stats"),
+            TestJavaFileObject.create("ServiceProvider",
+                "@org.kordamp.jipsy.annotations.ServiceProviderFor({Runnable.class, java.io.Closeable.class})\n" +
+                    "public class ServiceProvider implements Runnable, java.io.Closeable {\n" +
+                    "    public void run() { }\n" +
+                    "    public void close() { }\n" +
+                    "}"));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        File file = new File(outputDir, "META-INF/jipsy/stats.json");
+        assertTrue(file.exists());
+        String json = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        assertTrue(json, json.contains("\"processor\": \"" + JipsyProcessor.class.getName() + "\""));
+        assertTrue(json, json.contains("{\"round\": 1, \"rootElements\": 1, \"annotatedElements\": 1, "));
+        assertTrue(json, json.contains("\"ServiceProviderProcessor\": {\"annotatedElements\": 1, \"providers\": 2, " +
+            "\"filesRead\": 0, \"filesRestored\": 0, \"filesWritten\": 2, "));
+    }
+
+    @Test
+    public void testNoStatsByDefault() {
+        List<Diagnostic<JavaFileObject>> diagnostics = compile(
+            TestJavaFileObject.create("ServiceProvider",
+                "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public class ServiceProvider implements Runnable {\n" +
+                    "    public void run() { }\n" +
+                    "}"));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        assertFalse(new File(outputDir, "META-INF/jipsy/stats.json").exists());
+    }
+
+    @Test
+    public void testLogIsWrittenToSourceOutput() throws IOException {
+        File sourceDir = new File(outputDir, "generated");
+        assertTrue(sourceDir.mkdirs());
+        File classesDir = new File(outputDir, "classes");
+        assertTrue(classesDir.mkdirs());
+        List<Diagnostic<JavaFileObject>> diagnostics = compile(Arrays.asList("-d", classesDir.getPath(), "-s", sourceDir.getPath(), "-Aspi_log"),
+            TestJavaFileObject.create("ServiceProvider",
+                "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public class ServiceProvider implements Runnable {\n" +
+                    "    public void run() { }\n" +
+                    "}"));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        File log = new File(sourceDir, "META-INF/jipsy/jipsy.log");
+        assertTrue(log.isFile());
+        assertTrue(new String(Files.readAllBytes(log.toPath()), "UTF-8").contains("Starting round"));
+        assertFalse(new File(classesDir, "META-INF/jipsy").exists());
+        assertEquals(Collections.singletonList("java.lang.Runnable"), Arrays.asList(new File(classesDir, "META-INF/services").list()));
+    }
+
+    @Test
+    public void testIndexIsOnlyWrittenByJipsyProcessor() {
+        List<Processor> processors = Arrays.<Processor>asList(new ServiceProviderProcessor(), new TypeProviderProcessor());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(processors,
+            Arrays.asList("-d", outputDir.getPath(), "-Aspi_index"), null, Arrays.asList(
+                TestJavaFileObject.create("ServiceProvider",
+                    "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                        "public class ServiceProvider implements Runnable {\n    public void run() { }\n}"),
+                TestJavaFileObject.create("TypeProvider",
+                    "@org.kordamp.jipsy.annotations.TypeProviderFor(Runnable.class)\n" +
+                        "public interface TypeProvider extends Runnable { }")));
+        for (Diagnostic<JavaFileObject> diagnostic : diagnostics) {
+            assertEquals(diagnostic.toString(), Diagnostic.Kind.WARNING, diagnostic.getKind());
+        }
+        assertEquals(2, diagnostics.size());
+        assertFalse(new File(outputDir, BinaryIndex.RESOURCE_NAME).exists());
+    }
+
+    @Test
+    public void testIndividualProcessorsLogToTheirOwnFiles() throws IOException {
+        File sourceDir = new File(outputDir, "generated");
+        assertTrue(sourceDir.mkdirs());
+        List<Processor> processors = Arrays.<Processor>asList(new ServiceProviderProcessor(), new TypeProviderProcessor());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(processors,
+            Arrays.asList("-d", outputDir.getPath(), "-s", sourceDir.getPath(), "-Aspi_log"), null, Arrays.asList(
+                TestJavaFileObject.create("ServiceProvider",
+                    "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                        "public class ServiceProvider implements Runnable {\n    public void run() { }\n}"),
+                TestJavaFileObject.create("TypeProvider",
+                    "@org.kordamp.jipsy.annotations.TypeProviderFor(Runnable.class)\n" +
+                        "public interface TypeProvider extends Runnable { }")));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        for (String name : Arrays.asList("ServiceProviderProcessor", "TypeProviderProcessor")) {
+            File log = new File(sourceDir, "META-INF/jipsy/" + name + ".log");
+            assertTrue(log.getPath(), log.isFile());
+            assertTrue(new String(Files.readAllBytes(log.toPath()), "UTF-8").contains("Starting round"));
+        }
+        assertFalse(new File(sourceDir, "META-INF/jipsy/jipsy.log").exists());
+    }
+
+    @Test
+    public void testIndividualProcessorsReportToTheirOwnFiles() {
+        List<Processor> processors = Arrays.<Processor>asList(new ServiceProviderProcessor(), new TypeProviderProcessor());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(processors,
+            Arrays.asList("-d", outputDir.getPath(), "-Aspi_stats"), null, Arrays.asList(
+                TestJavaFileObject.create("ServiceProvider",
+                    "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                        "public class ServiceProvider implements Runnable {\n    public void run() { }\n}")));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        assertTrue(new File(outputDir, "META-INF/jipsy/ServiceProviderProcessor-stats.json").isFile());
+        assertTrue(new File(outputDir, "META-INF/jipsy/TypeProviderProcessor-stats.json").isFile());
+        assertFalse(new File(outputDir, "META-INF/jipsy/stats.json").exists());
+    }
+
+    private List<Diagnostic<JavaFileObject>> compile(JavaFileObject... sources) {
+        return compile(Arrays.asList("-d", outputDir.getPath()), sources);
+    }
+
+    private List<Diagnostic<JavaFileObject>> compile(List<String> options, JavaFileObject... sources) {
+        return TestDiagnosticListener.compile(new JipsyProcessor(), options, null, Arrays.asList(sources));
+    }
+
+    private List<String> readProviders(String path) throws IOException {
+        File file = new File(outputDir, path);
+        assertTrue(path, file.exists());
+        List<String> providers = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    providers.add(line.trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return providers;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+import org.kordamp.jipsy.processor.testutils.TestMessager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class LogSinkTest extends NoOutputTestBase {
+    private File logFile;
+
+    @Before
+    public void setupLogFile() {
+        File dir = new File("target/log-sink-test/" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        logFile = new File(dir, "jipsy.log");
+    }
+
+    @Test
+    public void testMemorySinkKeepsMessages() {
+        MemoryLogSink sink = new MemoryLogSink();
+        sink.append("first");
+        sink.append("second");
+        assertEquals("first\nsecond\n", sink.getContent());
+    }
+
+    @Test
+    public void testMemorySinkDropsOldestMessages() {
+        MemoryLogSink sink = new MemoryLogSink(12);
+        sink.append("first");
+        sink.append("second");
+        sink.append("third");
+        assertEquals("third\n", sink.getContent());
+    }
+
+    @Test
+    public void testFileSinkBuffersUntilClosed() throws IOException {
+        RollingFileLogSink sink = new RollingFileLogSink(logFile, 1024, 1);
+        sink.append("message");
+        assertEquals("", sink.getContent());
+        assertFalse(logFile.exists());
+
+        sink.close();
+        assertEquals("message\n", read(logFile));
+    }
+
+    @Test
+    public void testFileSinkAppendsToExistingLog() throws IOException {
+        RollingFileLogSink sink = new RollingFileLogSink(logFile, 1024, 1);
+        sink.append("first");
+        sink.close();
+
+        sink = new RollingFileLogSink(logFile, 1024, 1);
+        sink.append("second");
+        sink.close();
+        assertEquals("first\nsecond\n", read(logFile));
+    }
+
+    @Test
+    public void testFileSinkRollsOver() throws IOException {
+        RollingFileLogSink sink = new RollingFileLogSink(logFile, 8, 2, 1);
+        sink.append("first");
+        sink.append("second");
+        sink.append("third");
+        sink.append("fourth");
+        sink.close();
+
+        assertEquals("fourth\n", read(logFile));
+        assertEquals("third\n", read(new File(logFile.getPath() + ".1")));
+        assertEquals("second\n", read(new File(logFile.getPath() + ".2")));
+        assertFalse(new File(logFile.getPath() + ".3").exists());
+    }
+
+    @Test
+    public void testFileSinkWithoutBackups() throws IOException {
+        RollingFileLogSink sink = new RollingFileLogSink(logFile, 8, 0, 1);
+        sink.append("first");
+        sink.append("second");
+        sink.close();
+
+        assertEquals("second\n", read(logFile));
+        assertFalse(new File(logFile.getPath() + ".1").exists());
+    }
+
+    @Test
+    public void testLoggerWritesToSink() {
+        MemoryLogSink sink = new MemoryLogSink();
+        Options options = new Options("MyProcessor", Collections.singletonMap(Options.SPI_LOG_OPTION, "true"));
+        ProcessorLogger logger = new ProcessorLogger(new TestMessager(), options, sink);
+        logger.note(LogLocation.LOG_FILE, "message");
+        logger.warning(LogLocation.LOG_FILE, "careful");
+        assertEquals("message\nwarning: careful\n", sink.getContent());
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+}
@@ -50,6 +50,7 @@ import java.util.*;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 public class OptionsTest extends NoOutputTestBase {
@@ -177,6 +178,52 @@ public class OptionsTest extends NoOutputTestBase {
         assertEquals(expected, getOptions("-Aspi_log").report());
     }
 
+    @Test
+    public void testStats() {
+        assertFalse(getOptions("-Aspi_log").stats());
+        assertTrue(getOptions("-Aspi_stats").stats());
+    }
+
+    @Test
+    public void testRegistry() {
+        assertNull(getOptions("-Aspi_log").registry());
+        assertEquals("com.acme.registry", getOptions("-Aspi_registry=com.acme.registry").registry());
+
+        Options options = getOptions("-Aspi_registry=not a package");
+        assertNull(options.registry());
+        assertEquals(1, options.getWarnings().size());
+    }
+
+    @Test
+    public void testIndex() {
+        assertFalse(getOptions("-Aspi_log").index());
+        assertTrue(getOptions("-Aspi_index").index());
+        assertFalse(getOptions("-Aspi_index=false").index());
+    }
+
+    @Test
+    public void testLogLimitsDefault() {
+        Options options = getOptions("-Aspi_log");
+        assertEquals(Options.DEFAULT_LOG_MAX_SIZE, options.logMaxSize());
+        assertEquals(Options.DEFAULT_LOG_MAX_FILES, options.logMaxFiles());
+    }
+
+    @Test
+    public void testLogLimits() {
+        Options options = getOptions("-Aspi_log_max_size=4096", "-Aspi_log_max_files=0");
+        assertEquals(4096L, options.logMaxSize());
+        assertEquals(0, options.logMaxFiles());
+        assertTrue(options.getWarnings().isEmpty());
+    }
+
+    @Test
+    public void testLogLimitsInvalid() {
+        Options options = getOptions("-Aspi_log_max_size=big", "-Aspi_log_max_files=-1");
+        assertEquals(Options.DEFAULT_LOG_MAX_SIZE, options.logMaxSize());
+        assertEquals(Options.DEFAULT_LOG_MAX_FILES, options.logMaxFiles());
+        assertEquals(2, options.getWarnings().size());
+    }
+
     private String report(String disabled, String verbose, String log, String dir) {
         StringBuilder message = new StringBuilder();
         message
@@ -187,6 +234,11 @@ public class OptionsTest extends NoOutputTestBase {
         appendValue(message, "spi_verbose", verbose);
         appendValue(message, "spi_log", log);
         appendValue(message, "spi_dir", dir);
+        appendValue(message, "spi_log_max_size", null);
+        appendValue(message, "spi_log_max_files", null);
+        appendValue(message, "spi_stats", null);
+        appendValue(message, "spi_registry", null);
+        appendValue(message, "spi_index", null);
         return message.toString();
     }
 
@@ -214,7 +266,9 @@ public class OptionsTest extends NoOutputTestBase {
 
     @SupportedAnnotationTypes("*")
     @SupportedSourceVersion(SourceVersion.RELEASE_6)
-    @SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION})
+    @SupportedOptions({Options.SPI_DIR_OPTION, Options.SPI_LOG_OPTION, Options.SPI_VERBOSE_OPTION, Options.SPI_DISABLED_OPTION,
+        Options.SPI_LOG_MAX_SIZE_OPTION, Options.SPI_LOG_MAX_FILES_OPTION, Options.SPI_STATS_OPTION,
+        Options.SPI_REGISTRY_OPTION, Options.SPI_INDEX_OPTION})
     public static class TestProcessor extends AbstractProcessor {
 
         @Override
@@ -43,8 +43,10 @@ import org.kordamp.jipsy.processor.testutils.TestMessager.Message;
 import javax.tools.Diagnostic.Kind;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 
 public class ProcessorLoggerTest extends NoOutputTestBase {
@@ -117,7 +119,7 @@ public class ProcessorLoggerTest extends NoOutputTestBase {
     @Test(expected = NullPointerException.class)
     public void testNoteMessageNull() {
         ProcessorLogger logger = new ProcessorLogger(messager, options);
-        logger.note(LogLocation.BOTH, null);
+        logger.note(LogLocation.BOTH, (String) null);
     }
 
     @Test
@@ -167,6 +169,63 @@ public class ProcessorLoggerTest extends NoOutputTestBase {
     }
 
 
+    @Test
+    public void testIsEnabled() {
+        Options none = new Options(null, Collections.<String, String>emptyMap());
+        ProcessorLogger logger = new ProcessorLogger(messager, none);
+        assertFalse(logger.isEnabled(LogLocation.MESSAGER));
+        assertFalse(logger.isEnabled(LogLocation.LOG_FILE));
+        assertFalse(logger.isEnabled(LogLocation.BOTH));
+
+        logger = new ProcessorLogger(messager, optionsLog);
+        assertFalse(logger.isEnabled(LogLocation.MESSAGER));
+        assertTrue(logger.isEnabled(LogLocation.LOG_FILE));
+        assertTrue(logger.isEnabled(LogLocation.BOTH));
+
+        logger = new ProcessorLogger(messager, optionsVerbose);
+        assertTrue(logger.isEnabled(LogLocation.MESSAGER));
+        assertFalse(logger.isEnabled(LogLocation.LOG_FILE));
+        assertTrue(logger.isEnabled(LogLocation.BOTH));
+    }
+
+    @Test
+    public void testLazyNoteNotEvaluatedWhenDisabled() {
+        ProcessorLogger logger = new ProcessorLogger(messager, optionsVerbose);
+        logger.note(LogLocation.LOG_FILE, new Supplier<String>() {
+            @Override
+            public String get() {
+                throw new AssertionError("message should not be evaluated");
+            }
+        });
+        assertEquals("", logger.getFileContent());
+    }
+
+    @Test
+    public void testLazyNoteToFileLogging() {
+        ProcessorLogger logger = new ProcessorLogger(messager, optionsLog);
+        logger.note(LogLocation.LOG_FILE, new Supplier<String>() {
+            @Override
+            public String get() {
+                return "message";
+            }
+        });
+        assertEquals("message\n", logger.getFileContent());
+    }
+
+    @Test
+    public void testFormattedNoteToFileLogging() {
+        ProcessorLogger logger = new ProcessorLogger(messager, optionsLog);
+        logger.note(LogLocation.LOG_FILE, "Adding %s to %s", "provider", "service");
+        logger.note(LogLocation.LOG_FILE, "Removing %s", "provider");
+        assertEquals("Adding provider to service\nRemoving provider\n", logger.getFileContent());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testFormattedNoteLocationNull() {
+        ProcessorLogger logger = new ProcessorLogger(messager, optionsLog);
+        logger.note(null, "Removing %s", "provider");
+    }
+
     @Test(expected = NullPointerException.class)
     public void testWarningLocationNull() {
         ProcessorLogger logger = new ProcessorLogger(messager, options);
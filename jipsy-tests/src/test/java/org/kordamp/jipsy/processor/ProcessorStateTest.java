@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andres Almiray
+ */
+public class ProcessorStateTest extends NoOutputTestBase {
+    private File file;
+
+    @Before
+    public void setupFile() throws IOException {
+        File dir = new File("target/state-test/" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        file = new File(dir, "java.lang.Runnable");
+        write(file, "ProviderA\nProviderB\n");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ProcessorState state = new ProcessorState();
+        state.put("java.lang.Runnable", file, Arrays.asList("ProviderA", "ProviderB"));
+        state.put("java.util.concurrent.Callable", 42L, 7L, 1234L, Collections.singletonList("Task"));
+
+        ProcessorState copy = ProcessorState.read(new ByteArrayInputStream(toBytes(state)));
+        assertEquals(state, copy);
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), copy.getProviders("java.lang.Runnable", file));
+    }
+
+    @Test
+    public void testMissingFileIsNotRecorded() {
+        ProcessorState state = new ProcessorState();
+        state.put("missing", new File(file.getParentFile(), "missing"), Collections.singletonList("ProviderA"));
+        assertTrue(state.names().isEmpty());
+    }
+
+    @Test
+    public void testChangedFileIsStale() throws IOException {
+        ProcessorState state = new ProcessorState();
+        state.put("java.lang.Runnable", file, Arrays.asList("ProviderA", "ProviderB"));
+
+        write(file, "ProviderA\n");
+        assertNull(state.getProviders("java.lang.Runnable", file));
+    }
+
+    @Test
+    public void testSameSizeEditWithSameTimestampIsStale() throws IOException {
+        ProcessorState state = new ProcessorState();
+        state.put("java.lang.Runnable", file, Arrays.asList("ProviderA", "ProviderB"));
+        long lastModified = file.lastModified();
+
+        write(file, "ProviderC\nProviderD\n");
+        assertTrue(file.setLastModified(lastModified));
+        assertNull(state.getProviders("java.lang.Runnable", file));
+    }
+
+    @Test
+    public void testTouchedFileIsCheckedByCrc() throws IOException {
+        ProcessorState state = new ProcessorState();
+        state.put("java.lang.Runnable", file, Arrays.asList("ProviderA", "ProviderB"));
+
+        assertTrue(file.setLastModified(file.lastModified() - 60000L));
+        assertEquals(Arrays.asList("ProviderA", "ProviderB"), state.getProviders("java.lang.Runnable", file));
+        write(file, "ProviderC\nProviderD\n");
+        assertTrue(file.setLastModified(file.lastModified() - 60000L));
+        assertNull(state.getProviders("java.lang.Runnable", file));
+    }
+
+    @Test
+    public void testDeletedFileIsStale() {
+        ProcessorState state = new ProcessorState();
+        state.put("java.lang.Runnable", file, Arrays.asList("ProviderA", "ProviderB"));
+
+        assertTrue(file.delete());
+        assertNull(state.getProviders("java.lang.Runnable", file));
+    }
+
+    @Test
+    public void testCorruptedStateIsRejected() throws IOException {
+        ProcessorState state = new ProcessorState();
+        state.put("java.lang.Runnable", file, Arrays.asList("ProviderA", "ProviderB"));
+        byte[] bytes = toBytes(state);
+        bytes[bytes.length / 2] ^= 0x20;
+
+        try {
+            ProcessorState.read(new ByteArrayInputStream(bytes));
+            fail("Corrupted state was accepted");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOtherContentIsRejected() throws IOException {
+        ProcessorState.read(new ByteArrayInputStream("ProviderA\n".getBytes("UTF-8")));
+    }
+
+    private static byte[] toBytes(ProcessorState state) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.write(out);
+        return out.toByteArray();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
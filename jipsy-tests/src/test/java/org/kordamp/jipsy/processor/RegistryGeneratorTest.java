@@ -0,0 +1,193 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.processor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
+import org.kordamp.jipsy.processor.testutils.NoOutputTestBase;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+import org.kordamp.jipsy.processor.type.TypeProviderProcessor;
+import org.kordamp.jipsy.util.ProviderFactories;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class RegistryGeneratorTest extends NoOutputTestBase {
+    private File outputDir;
+
+    @Before
+    public void setupOutputDir() {
+        outputDir = new File("target/registry-test/" + System.nanoTime());
+        assertTrue(outputDir.mkdirs());
+    }
+
+    @Test
+    public void testNoRegistryByDefault() {
+        assertCompiles(null, sources());
+        assertFalse(new File(outputDir, "META-INF/jipsy/services.registry").exists());
+        assertFalse(new File(outputDir, "acme/registry/JipsyServiceRegistry.class").exists());
+    }
+
+    @Test
+    public void testMarkerIsResetWithoutOption() throws Exception {
+        assertCompiles("acme.registry", sources());
+        assertCompiles(null, sources());
+        assertEquals(1, Files.readAllLines(new File(outputDir, "META-INF/jipsy/services.registry").toPath()).size());
+        assertEquals(1, Files.readAllLines(new File(outputDir, "META-INF/jipsy/types.registry").toPath()).size());
+    }
+
+    @Test
+    public void testServiceRegistry() throws Exception {
+        assertCompiles("acme.registry", sources());
+        assertEquals("acme.registry.JipsyServiceRegistry", marker("services"));
+
+        Function<String, ?> registry = registry("acme.registry.JipsyServiceRegistry");
+        Supplier<?>[] runnables = (Supplier<?>[]) registry.apply(Runnable.class.getName());
+        assertEquals(2, runnables.length);
+        assertEquals("acme.One", runnables[0].get().getClass().getName());
+        assertEquals("acme.Outer$Nested", runnables[1].get().getClass().getName());
+        assertFalse(runnables[0].get() == runnables[0].get());
+        assertNull(registry.apply(Callable.class.getName()));
+    }
+
+    @Test
+    public void testTypeRegistry() throws Exception {
+        assertCompiles("acme.registry", sources());
+        assertEquals("acme.registry.JipsyTypeRegistry", marker("types"));
+
+        Class<?>[] types = (Class<?>[]) registry("acme.registry.JipsyTypeRegistry").apply(Runnable.class.getName());
+        assertEquals(1, types.length);
+        assertEquals("acme.Task", types[0].getName());
+    }
+
+    @Test
+    public void testEntriesWithUnreachableProvidersAreLeftOut() throws Exception {
+        File existing = new File(outputDir, "META-INF/services/java.util.concurrent.Callable");
+        assertTrue(existing.getParentFile().mkdirs());
+        Files.write(existing.toPath(), "acme.Missing\n".getBytes("UTF-8"));
+
+        assertCompiles("acme.registry", sources());
+
+        Function<String, ?> registry = registry("acme.registry.JipsyServiceRegistry");
+        assertNull(registry.apply(Callable.class.getName()));
+        assertEquals(2, ((Supplier<?>[]) registry.apply(Runnable.class.getName())).length);
+    }
+
+    @Test
+    public void testRegistryListsProvidersOfPreviousCompilations() throws Exception {
+        assertCompiles("acme.registry", sources());
+        assertCompiles("acme.registry", TestJavaFileObject.create("acme/Two",
+            "package acme;\n" +
+                "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                "public class Two implements Runnable {\n    public void run() { }\n}"));
+
+        Supplier<?>[] runnables = (Supplier<?>[]) registry("acme.registry.JipsyServiceRegistry").apply(Runnable.class.getName());
+        assertEquals(3, runnables.length);
+        assertEquals("acme.Two", runnables[2].get().getClass().getName());
+    }
+
+    @Test
+    public void testRegistryIsFoundBelowSpiDir() throws Exception {
+        assertCompiles("acme.registry", "relocated/", sources());
+        File marker = new File(outputDir, "relocated/META-INF/jipsy/services.registry");
+        assertTrue(marker.isFile());
+        assertFalse(new File(outputDir, "META-INF/jipsy/services.registry").exists());
+
+        // a provider only the index file lists tells whether the registry was used
+        File index = new File(outputDir, "relocated/META-INF/services/java.lang.Runnable");
+        Files.write(index.toPath(), "acme.Missing\n".getBytes("UTF-8"), StandardOpenOption.APPEND);
+        ClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, getClass().getClassLoader());
+        List<Supplier<Runnable>> runnables = ProviderFactories.services(loader, "relocated/META-INF/services", Runnable.class);
+        assertEquals(2, runnables.size());
+        assertEquals("acme.One", runnables.get(0).get().getClass().getName());
+    }
+
+    private void assertCompiles(String registry, JavaFileObject... sources) {
+        assertCompiles(registry, null, sources);
+    }
+
+    private void assertCompiles(String registry, String dir, JavaFileObject... sources) {
+        List<String> options = new ArrayList<String>(Arrays.asList("-d", outputDir.getPath(),
+            "-classpath", outputDir.getPath() + File.pathSeparator + System.getProperty("java.class.path")));
+        if (registry != null) {
+            options.add("-Aspi_registry=" + registry);
+        }
+        if (dir != null) {
+            options.add("-Aspi_dir=" + dir);
+        }
+        List<Processor> processors = Arrays.<Processor>asList(new ServiceProviderProcessor(), new TypeProviderProcessor());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(
+            processors, options, null, Arrays.asList(sources));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+    }
+
+    private String marker(String kind) throws IOException {
+        File file = new File(outputDir, "META-INF/jipsy/" + kind + ".registry");
+        assertTrue(file.isFile());
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertTrue(lines.get(0).startsWith("#"));
+        return lines.get(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<String, ?> registry(String className) throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, getClass().getClassLoader());
+        return (Function<String, ?>) loader.loadClass(className).getConstructor().newInstance();
+    }
+
+    private static JavaFileObject[] sources() {
+        return new JavaFileObject[]{
+            TestJavaFileObject.create("acme/One",
+                "package acme;\n" +
+                    "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public class One implements Runnable {\n    public void run() { }\n}"),
+            TestJavaFileObject.create("acme/Outer",
+                "package acme;\n" +
+                    "public class Outer {\n" +
+                    "    @org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "    public static class Nested implements Runnable {\n        public void run() { }\n    }\n}"),
+            TestJavaFileObject.create("acme/Task",
+                "package acme;\n" +
+                    "@org.kordamp.jipsy.annotations.TypeProviderFor(Runnable.class)\n" +
+                    "public interface Task extends Runnable {\n}")
+        };
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class JarIndexTest {
+    private File file;
+
+    @Before
+    public void setupJar() throws IOException {
+        JarIndex.clear();
+        File dir = new File("target/jar-index-test/" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        file = new File(dir, "test.jar");
+        writeJar(file, "META-INF/", "META-INF/types/", "META-INF/types/b.B", "META-INF/types/a.A",
+            "META-INF/typesX", "org/example/One.class");
+    }
+
+    @After
+    public void clearIndexes() {
+        JarIndex.clear();
+    }
+
+    @Test
+    public void testNamesStartingWith() throws IOException {
+        try (JarFile jar = new JarFile(file)) {
+            JarIndex index = JarIndex.of(file, jar);
+            assertEquals(Arrays.asList("META-INF/types/", "META-INF/types/a.A", "META-INF/types/b.B"),
+                index.namesStartingWith("META-INF/types/"));
+            assertEquals(Arrays.asList("META-INF/types/", "META-INF/types/a.A", "META-INF/types/b.B", "META-INF/typesX"),
+                index.namesStartingWith("META-INF/types"));
+            assertEquals(Collections.emptyList(), index.namesStartingWith("META-INF/services"));
+            assertEquals(Collections.emptyList(), index.namesStartingWith("zzz"));
+        }
+    }
+
+    @Test
+    public void testIndexIsCachedUntilTheJarChanges() throws IOException {
+        JarIndex index;
+        try (JarFile jar = new JarFile(file)) {
+            index = JarIndex.of(file, jar);
+            assertSame(index, JarIndex.of(file, jar));
+        }
+
+        writeJar(file, "META-INF/types/c.C");
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        try (JarFile jar = new JarFile(file)) {
+            assertEquals(Collections.singletonList("META-INF/types/c.C"),
+                JarIndex.of(file, jar).namesStartingWith("META-INF/types/"));
+        }
+    }
+
+    @Test
+    public void testCacheIsBounded() throws IOException {
+        try (JarFile jar = new JarFile(file)) {
+            JarIndex first = JarIndex.of(file, jar);
+            for (int i = 0; i < JarIndex.MAX_INDEXES; i++) {
+                // each deployment extracts the jar to a new location
+                JarIndex.of(new File(file.getParentFile(), "deploy" + i + ".jar"), jar);
+            }
+            assertEquals(JarIndex.MAX_INDEXES, JarIndex.size());
+            assertNotSame(first, JarIndex.of(file, jar));
+        }
+    }
+
+    @Test
+    public void testTypeLoaderInvalidateAllClearsIndexes() throws IOException {
+        try (JarFile jar = new JarFile(file)) {
+            JarIndex.of(file, jar);
+        }
+        assertEquals(1, JarIndex.size());
+        new TypeLoader().invalidateAll();
+        assertEquals(0, JarIndex.size());
+    }
+
+    private static void writeJar(File file, String... names) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+            for (String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    out.write((name + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.processor.JipsyProcessor;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andres Almiray
+ */
+public class ModuleIndexLoaderTest {
+    private File root;
+
+    @Before
+    public void setupRoot() {
+        root = new File("target/module-index-loader-test/" + System.nanoTime());
+        assertTrue(root.mkdirs());
+    }
+
+    @Test
+    public void testIndexedAndPlainRoots() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        File plain = compile("plain", false, "com.plain", "Two");
+        assertTrue(new File(indexed, BinaryIndex.RESOURCE_NAME).isFile());
+        assertFalse(new File(plain, BinaryIndex.RESOURCE_NAME).isFile());
+
+        // the processor records the index files as written
+        byte[] bytes = Files.readAllBytes(services(indexed).toPath());
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        try (InputStream in = new FileInputStream(new File(indexed, BinaryIndex.RESOURCE_NAME))) {
+            assertTrue(BinaryIndex.read(in).matches("META-INF/services", Runnable.class.getName(), bytes.length, crc.getValue()));
+        }
+
+        ClassLoader classLoader = loader(indexed, plain);
+        ModuleIndexLoader loader = new ModuleIndexLoader();
+        assertEquals(Arrays.asList("com.acme.One", "com.plain.Two"), loader.entries(classLoader, "META-INF/services", Runnable.class));
+        assertEquals(Arrays.asList("com.acme.OneTask", "com.plain.TwoTask"), loader.entries(classLoader, Runnable.class));
+        assertEquals(Collections.emptyList(), loader.entries(classLoader, "META-INF/other", Runnable.class));
+    }
+
+    @Test
+    public void testSameSizeEditIsDetectedByChecksum() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        // same size as the index file, so that only the checksum tells them apart
+        writeIndex(indexed, read(indexed).replace("com.acme.One", "com.acme.Uno"));
+
+        List<String> entries = new ModuleIndexLoader().entries(loader(indexed), "META-INF/services", Runnable.class);
+        assertEquals(Collections.singletonList("com.acme.One"), entries);
+    }
+
+    @Test
+    public void testSameSizeEditIsDetectedWithUnknownClassLoaders() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        writeIndex(indexed, read(indexed).replace("com.acme.One", "com.acme.Uno"));
+
+        ClassLoader classLoader = new ClassLoader(loader(indexed)) { };
+        List<String> entries = new ModuleIndexLoader().entries(classLoader, "META-INF/services", Runnable.class);
+        assertEquals(Collections.singletonList("com.acme.One"), entries);
+    }
+
+    @Test
+    public void testLookupsListEveryRootOnce() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        File plain = compile("plain", false, "com.plain", "Two");
+        final AtomicInteger lookups = new AtomicInteger();
+        ClassLoader classLoader = new URLClassLoader(new URL[]{indexed.toURI().toURL(), plain.toURI().toURL()}, null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.incrementAndGet();
+                return super.getResources(name);
+            }
+        };
+
+        ModuleIndexLoader loader = new ModuleIndexLoader();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Arrays.asList("com.acme.One", "com.plain.Two"), loader.entries(classLoader, "META-INF/services", Runnable.class));
+            assertEquals(Arrays.asList("com.acme.OneTask", "com.plain.TwoTask"), loader.entries(classLoader, Runnable.class));
+        }
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void testChangedIndexFileIsRead() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        Files.write(services(indexed).toPath(), "com.acme.Merged\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<String> entries = new ModuleIndexLoader().entries(loader(indexed), "META-INF/services", Runnable.class);
+        assertEquals(Arrays.asList("com.acme.One", "com.acme.Merged"), entries);
+    }
+
+    @Test
+    public void testIndexFileMissingFromIndexIsRead() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        try (OutputStream out = new FileOutputStream(new File(indexed, BinaryIndex.RESOURCE_NAME))) {
+            new BinaryIndex.Builder().section("META-INF/services").write(out);
+        }
+
+        List<String> entries = new ModuleIndexLoader().entries(loader(indexed), "META-INF/services", Runnable.class);
+        assertEquals(Collections.singletonList("com.acme.One"), entries);
+    }
+
+    @Test
+    public void testJarEntriesAreCheckedByCrc() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        writeIndex(indexed, read(indexed).replace("com.acme.One", "com.acme.Uno"));
+        File jar = new File(root, "indexed.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String name : Arrays.asList(BinaryIndex.RESOURCE_NAME, "META-INF/services/" + Runnable.class.getName())) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(Files.readAllBytes(new File(indexed, name).toPath()));
+                out.closeEntry();
+            }
+        }
+
+        List<String> entries = new ModuleIndexLoader().entries(loader(jar), "META-INF/services", Runnable.class);
+        assertEquals(Collections.singletonList("com.acme.One"), entries);
+    }
+
+    private static File services(File root) {
+        return new File(root, "META-INF/services/" + Runnable.class.getName());
+    }
+
+    private static String read(File root) throws IOException {
+        return new String(Files.readAllBytes(services(root).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void writeIndex(File root, String content) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(root, BinaryIndex.RESOURCE_NAME))) {
+            new BinaryIndex.Builder().add("META-INF/services", Runnable.class.getName(), content).write(out);
+        }
+    }
+
+    @Test
+    public void testCorruptedIndexFallsBackToIndexFiles() throws IOException {
+        File indexed = compile("indexed", true, "com.acme", "One");
+        try (OutputStream out = new FileOutputStream(new File(indexed, BinaryIndex.RESOURCE_NAME))) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        List<String> entries = new ModuleIndexLoader().entries(loader(indexed), "META-INF/services", Runnable.class);
+        assertEquals(Collections.singletonList("com.acme.One"), entries);
+    }
+
+    private File compile(String name, boolean index, String packageName, String className) {
+        File dir = new File(root, name);
+        assertTrue(dir.mkdirs());
+        List<String> options = new ArrayList<>(Arrays.asList("-d", dir.getPath(),
+            "-classpath", System.getProperty("java.class.path")));
+        if (index) {
+            options.add("-Aspi_index");
+        }
+        String path = packageName.replace('.', '/') + "/";
+        List<JavaFileObject> sources = Arrays.asList(
+            TestJavaFileObject.create(path + className,
+                "package " + packageName + ";\n" +
+                    "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public class " + className + " implements Runnable {\n    public void run() { }\n}"),
+            TestJavaFileObject.create(path + className + "Task",
+                "package " + packageName + ";\n" +
+                    "@org.kordamp.jipsy.annotations.TypeProviderFor(Runnable.class)\n" +
+                    "public interface " + className + "Task extends Runnable {\n}"));
+        List<Processor> processors = Collections.<Processor>singletonList(new JipsyProcessor());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(processors, options, null, sources);
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        return dir;
+    }
+
+    private ClassLoader loader(File... roots) throws IOException {
+        URL[] urls = new URL[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            urls[i] = roots[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kordamp.jipsy.processor.service.ServiceProviderProcessor;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+import org.kordamp.jipsy.processor.type.TypeProviderProcessor;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andres Almiray
+ */
+public class ProviderFactoriesTest {
+    private File root;
+
+    @Before
+    public void setupRoot() {
+        root = new File("target/provider-factories-test/" + System.nanoTime());
+        assertTrue(root.mkdirs());
+    }
+
+    @Test
+    public void testServicesPreferRegistries() throws IOException {
+        File generated = compile("generated", "com.acme.registry", "com.acme", "One");
+        File plain = compile("plain", null, "com.plain", "Two");
+
+        List<Supplier<Runnable>> factories = ProviderFactories.services(loader(generated, plain), Runnable.class);
+        assertEquals(2, factories.size());
+        assertEquals("com.acme.One", factories.get(0).get().getClass().getName());
+        assertEquals("com.plain.Two", factories.get(1).get().getClass().getName());
+        assertFalse(isReflective(factories.get(0)));
+        assertTrue(isReflective(factories.get(1)));
+    }
+
+    @Test
+    public void testTypesPreferRegistries() throws IOException {
+        File generated = compile("generated", "com.acme.registry", "com.acme", "One");
+        File plain = compile("plain", null, "com.plain", "Two");
+
+        List<Class<?>> types = ProviderFactories.types(loader(generated, plain), Runnable.class);
+        assertEquals(2, types.size());
+        assertEquals("com.acme.OneTask", types.get(0).getName());
+        assertEquals("com.plain.TwoTask", types.get(1).getName());
+    }
+
+    @Test
+    public void testShadowedRegistryIsIgnored() throws IOException {
+        File first = compile("first", "com.acme.registry", "com.acme", "One");
+        File second = compile("second", "com.acme.registry", "com.other", "Two");
+
+        List<Supplier<Runnable>> factories = ProviderFactories.services(loader(first, second), Runnable.class);
+        assertEquals(2, factories.size());
+        assertFalse(isReflective(factories.get(0)));
+        assertEquals("com.other.Two", factories.get(1).get().getClass().getName());
+        assertTrue(isReflective(factories.get(1)));
+    }
+
+    @Test
+    public void testReflectiveFactoryFailure() throws IOException {
+        File plain = compile("plain", null, "com.plain", "Two");
+        assertTrue(new File(plain, "com/plain/Two.class").delete());
+
+        List<Supplier<Runnable>> factories = ProviderFactories.services(loader(plain), Runnable.class);
+        assertEquals(1, factories.size());
+        try {
+            factories.get(0).get();
+            fail();
+        } catch (ServiceConfigurationError expected) {
+            assertTrue(expected.getMessage().contains("com.plain.Two"));
+        }
+    }
+
+    private static boolean isReflective(Supplier<?> factory) {
+        return factory.getClass().getName().startsWith(ProviderFactories.class.getName() + "$");
+    }
+
+    private File compile(String name, String registry, String packageName, String className) {
+        File dir = new File(root, name);
+        assertTrue(dir.mkdirs());
+        List<String> options = new ArrayList<>(Arrays.asList("-d", dir.getPath(),
+            "-classpath", System.getProperty("java.class.path")));
+        if (registry != null) {
+            options.add("-Aspi_registry=" + registry);
+        }
+        String path = packageName.replace('.', '/') + "/";
+        List<JavaFileObject> sources = Arrays.asList(
+            TestJavaFileObject.create(path + className,
+                "package " + packageName + ";\n" +
+                    "@org.kordamp.jipsy.annotations.ServiceProviderFor(Runnable.class)\n" +
+                    "public class " + className + " implements Runnable {\n    public void run() { }\n}"),
+            TestJavaFileObject.create(path + className + "Task",
+                "package " + packageName + ";\n" +
+                    "@org.kordamp.jipsy.annotations.TypeProviderFor(Runnable.class)\n" +
+                    "public interface " + className + "Task extends Runnable {\n}"));
+        List<Processor> processors = Arrays.<Processor>asList(new ServiceProviderProcessor(), new TypeProviderProcessor());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(processors, options, null, sources);
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        return dir;
+    }
+
+    private ClassLoader loader(File... roots) throws IOException {
+        URL[] urls = new URL[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            urls[i] = roots[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andres Almiray
+ */
+public class ProviderRegistryTest {
+    private static final AtomicInteger FIRST = new AtomicInteger();
+    private static final AtomicInteger SECOND = new AtomicInteger();
+
+    private File root;
+    private ClassLoader loader;
+
+    public interface Service {
+    }
+
+    public static class First implements Service {
+        public First() {
+            FIRST.incrementAndGet();
+        }
+    }
+
+    public static class Second implements Service {
+        public Second() {
+            SECOND.incrementAndGet();
+        }
+    }
+
+    @Before
+    public void setupClasspath() throws IOException {
+        FIRST.set(0);
+        SECOND.set(0);
+        root = new File("target/provider-registry-test/" + System.nanoTime());
+        File index = new File(root, "META-INF/services/" + Service.class.getName());
+        assertTrue(index.getParentFile().mkdirs());
+        write(index, First.class.getName() + " #@name=first\n" +
+            Second.class.getName() + " #@name=second;priority=5\n" +
+            First.class.getName() + "\n");
+        loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @Test
+    public void testProvidersAreResolvedLazily() {
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class);
+        assertEquals(ProviderRegistry.Scope.LAZY_SINGLETON, registry.getScope());
+        List<ProviderRegistry.Provider<Service>> providers = registry.providers();
+        assertEquals(2, providers.size());
+        assertEquals(First.class.getName(), providers.get(0).getName());
+        assertEquals(5, providers.get(1).getAttributes().getPriority());
+        assertEquals(0, FIRST.get() + SECOND.get());
+
+        Iterator<Service> iterator = registry.iterator();
+        assertTrue(iterator.next() instanceof First);
+        assertEquals(1, FIRST.get());
+        assertEquals(0, SECOND.get());
+        assertSame(Second.class, registry.find("second").get().type());
+        assertEquals(0, SECOND.get());
+        assertFalse(registry.find("third").isPresent());
+    }
+
+    @Test
+    public void testLazySingletonScope() {
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class);
+        Service first = registry.first().get();
+        assertSame(first, registry.first().get());
+        assertSame(first, registry.iterator().next());
+        assertEquals(1, FIRST.get());
+
+        registry.reload();
+        assertNotSame(first, registry.first().get());
+        assertEquals(2, FIRST.get());
+    }
+
+    @Test
+    public void testSingletonScope() {
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class, ProviderRegistry.Scope.SINGLETON);
+        assertEquals(0, FIRST.get() + SECOND.get());
+        registry.providers();
+        assertEquals(1, FIRST.get());
+        assertEquals(1, SECOND.get());
+        List<Service> services = new ArrayList<>();
+        registry.forEach(services::add);
+        assertSame(services.get(0), registry.first().get());
+        assertSame(services.get(1), registry.find("second").get().get());
+        assertEquals(1, FIRST.get());
+        assertEquals(1, SECOND.get());
+    }
+
+    @Test
+    public void testSingletonScopeLeavesFailuresToProviders() throws IOException {
+        write(new File(root, "META-INF/services/" + Service.class.getName()), "org.example.Missing\n" + First.class.getName() + "\n");
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class, ProviderRegistry.Scope.SINGLETON);
+        assertEquals(2, registry.providers().size());
+        assertEquals(1, FIRST.get());
+        assertSame(registry.providers(), registry.providers());
+        for (int i = 0; i < 2; i++) {
+            try {
+                registry.providers().get(0).get();
+                fail();
+            } catch (ServiceConfigurationError expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("org.example.Missing"));
+            }
+        }
+        assertTrue(registry.providers().get(1).get() instanceof First);
+        assertEquals(1, FIRST.get());
+    }
+
+    @Test
+    public void testPrototypeScope() {
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class, ProviderRegistry.Scope.PROTOTYPE);
+        assertNotSame(registry.first().get(), registry.first().get());
+        assertEquals(2, FIRST.get());
+        assertEquals(0, SECOND.get());
+    }
+
+    @Test
+    public void testStreamSelectsBeforeInstantiating() {
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class);
+        List<Service> services = registry.stream()
+            .sorted((a, b) -> IndexEntry.BY_PRIORITY.compare(a.getEntry(), b.getEntry()))
+            .limit(1)
+            .map(ProviderRegistry.Provider::get)
+            .collect(Collectors.toList());
+        assertTrue(services.get(0) instanceof Second);
+        assertEquals(0, FIRST.get());
+    }
+
+    @Test
+    public void testConcurrentFirstAccessCreatesOneInstance() throws Exception {
+        final ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Service>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<Service>() {
+                    @Override
+                    public Service call() throws Exception {
+                        start.await();
+                        return registry.iterator().next();
+                    }
+                }));
+            }
+            start.countDown();
+            Service first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Service> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, FIRST.get());
+            assertEquals(0, SECOND.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBrokenProvider() throws IOException {
+        write(new File(root, "META-INF/services/" + Service.class.getName()), "org.example.Missing\n" + Runnable.class.getName() + "\n");
+        ProviderRegistry<Service> registry = ProviderRegistry.services(loader, Service.class);
+        assertEquals(2, registry.providers().size());
+        for (ProviderRegistry.Provider<Service> provider : registry.providers()) {
+            try {
+                provider.get();
+                fail(provider.getName());
+            } catch (ServiceConfigurationError expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains(provider.getName()));
+            }
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
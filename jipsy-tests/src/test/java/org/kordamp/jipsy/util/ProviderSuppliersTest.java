@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.junit.Test;
+import org.kordamp.jipsy.processor.testutils.TestDiagnosticListener;
+import org.kordamp.jipsy.processor.testutils.TestJavaFileObject;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andres Almiray
+ */
+public class ProviderSuppliersTest {
+    public static class Plain {
+    }
+
+    public static class Failing {
+        public Failing() throws IOException {
+            throw new IOException("failed");
+        }
+    }
+
+    public static class WithArgs {
+        public WithArgs(String arg) {
+        }
+    }
+
+    public abstract static class Abstract {
+    }
+
+    static class Hidden {
+    }
+
+    @Test
+    public void testSuppliersAreCachedLambdas() {
+        Supplier<Plain> supplier = ProviderSuppliers.of(Plain.class);
+        assertSame(supplier, ProviderSuppliers.of(Plain.class));
+        assertTrue(supplier.getClass().isSynthetic());
+        assertNotSame(supplier.get(), supplier.get());
+        assertEquals(Plain.class, supplier.get().getClass());
+    }
+
+    @Test
+    public void testClassesOfOtherLoaders() throws Exception {
+        File dir = new File("target/provider-suppliers-test/" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        List<Diagnostic<JavaFileObject>> diagnostics = TestDiagnosticListener.compile(Collections.<Processor>emptyList(),
+            Arrays.asList("-d", dir.getPath(), "-proc:none"), null, Collections.singletonList(TestJavaFileObject.create("com/acme/Task",
+                "package com.acme;\n\npublic class Task implements java.util.concurrent.Callable<String> {\n    public String call() { return \"done\"; }\n}\n")));
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader())) {
+            Class<?> type = Class.forName("com.acme.Task", false, loader);
+            Supplier<?> supplier = ProviderSuppliers.of(type);
+            assertSame(supplier, ProviderSuppliers.of(type));
+            assertFalse(supplier.getClass().isSynthetic());
+            assertEquals("done", ((Callable<?>) supplier.get()).call());
+            assertNotSame(supplier.get(), supplier.get());
+        }
+    }
+
+    @Test
+    public void testConstructorExceptionsAreRethrown() {
+        try {
+            ProviderSuppliers.of(Failing.class).get();
+            fail();
+        } catch (Exception e) {
+            assertTrue(e instanceof IOException);
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInvalidClasses() {
+        for (Class<?> type : Arrays.asList(WithArgs.class, Abstract.class, Hidden.class, Runnable.class, int.class, String[].class)) {
+            try {
+                ProviderSuppliers.of(type);
+                fail(type.getName());
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().startsWith(type.getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,663 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andres Almiray
+ */
+public class TypeLoaderTest {
+    private File root;
+    private File index;
+
+    @Before
+    public void setupClasspath() throws IOException {
+        root = new File("target/type-loader-test/" + System.nanoTime());
+        index = new File(root, "META-INF/types/" + Runnable.class.getName());
+        assertTrue(index.getParentFile().mkdirs());
+        write(index, "# Generated\n  org.example.One # first\n\norg.example.Two\n");
+    }
+
+    @Test
+    public void testStaticLoad() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        assertTrue(TypeLoader.load(loader(), Runnable.class, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                lines.add(line);
+            }
+        }));
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two"), lines);
+    }
+
+    @Test
+    public void testEntriesAreCachedPerClassLoader() throws IOException {
+        TypeLoader typeLoader = new TypeLoader();
+        ClassLoader loader = loader();
+        List<String> entries = typeLoader.entries(loader, Runnable.class);
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two"), entries);
+
+        write(index, "org.example.Three\n");
+        assertSame(entries, typeLoader.entries(loader, Runnable.class));
+        assertEquals(Collections.singletonList("org.example.Three"), typeLoader.entries(loader(), Runnable.class));
+
+        typeLoader.invalidate(loader, "META-INF/types/", Runnable.class);
+        assertEquals(Collections.singletonList("org.example.Three"), typeLoader.entries(loader, Runnable.class));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        TypeLoader typeLoader = new TypeLoader();
+        ClassLoader loader = loader();
+        typeLoader.entries(loader, Runnable.class);
+        write(index, "org.example.Three\n");
+
+        typeLoader.invalidate(loader);
+        assertEquals(Collections.singletonList("org.example.Three"), typeLoader.entries(loader, Runnable.class));
+        write(index, "org.example.Four\n");
+        typeLoader.invalidateAll();
+        assertEquals(Collections.singletonList("org.example.Four"), typeLoader.entries(loader, Runnable.class));
+    }
+
+    @Test
+    public void testProcess() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        TypeLoader.LineProcessor processor = new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                assertSame(Runnable.class, type);
+                lines.add(line);
+            }
+        };
+        TypeLoader typeLoader = new TypeLoader();
+        ClassLoader loader = loader();
+        assertTrue(typeLoader.process(loader, Runnable.class, processor));
+        assertTrue(typeLoader.process(loader, Runnable.class, processor));
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two", "org.example.One", "org.example.Two"), lines);
+        assertEquals(Collections.emptyList(), typeLoader.entries(loader, Callable.class));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final TypeLoader typeLoader = new TypeLoader();
+        final ClassLoader loader = loader();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        return typeLoader.entries(loader, Runnable.class);
+                    }
+                }));
+            }
+            List<String> first = typeLoader.entries(loader, Runnable.class);
+            for (Future<List<String>> result : results) {
+                assertEquals(first, result.get());
+            }
+            assertSame(first, typeLoader.entries(loader, Runnable.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCollectedClassLoadersAreDropped() throws Exception {
+        ClassLoaderCache<String> cache = new ClassLoaderCache<>();
+        ClassLoader kept = loader();
+        cache.putIfAbsent(kept, "kept");
+        cache.putIfAbsent(loader(), "collected");
+
+        for (int i = 0; i < 50 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, cache.size());
+        assertEquals("kept", cache.get(kept));
+        assertEquals("kept", cache.putIfAbsent(kept, "other"));
+        assertEquals("kept", cache.remove(kept));
+        assertFalse(cache.size() > 0);
+    }
+
+    @Test
+    public void testLoadResourcesFromJar() throws IOException {
+        File jar = new File(root.getParentFile(), root.getName() + ".jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String name : Arrays.asList("META-INF/", "META-INF/types/", "META-INF/types/b.B", "META-INF/types/a.A", "org/example/C.txt")) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    out.write(("# " + name + "\n" + name.substring(name.lastIndexOf('/') + 1) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+
+        final List<String> lines = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)) {
+            assertTrue(TypeLoader.load(loader, "META-INF/types", new TypeLoader.PathFilter() {
+                @Override
+                public boolean accept(String path) {
+                    return !path.endsWith("/");
+                }
+            }, new TypeLoader.ResourceProcessor() {
+                @Override
+                public void process(ClassLoader classLoader, String line) {
+                    lines.add(line);
+                }
+            }));
+        }
+        assertEquals(Arrays.asList("a.A", "b.B"), lines);
+    }
+
+    @Test
+    public void testLoadResourcesKeepsLinesAsIs() throws IOException {
+        File file = new File(root, "META-INF/config/app.properties");
+        assertTrue(file.getParentFile().mkdirs());
+        write(file, "# settings\n  name = a value # not a comment\n\nurl=http://host/#fragment\n");
+
+        final List<String> lines = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null)) {
+            assertTrue(TypeLoader.load(loader, "META-INF/config", new TypeLoader.PathFilter() {
+                @Override
+                public boolean accept(String path) {
+                    return path.endsWith(".properties");
+                }
+            }, new TypeLoader.ResourceProcessor() {
+                @Override
+                public void process(ClassLoader classLoader, String line) {
+                    lines.add(line);
+                }
+            }));
+        }
+        assertEquals(Arrays.asList("  name = a value # not a comment", "url=http://host/#fragment"), lines);
+    }
+
+    @Test
+    public void testParallelLoadKeepsClasspathOrder() throws Exception {
+        URL[] urls = new URL[12];
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            File dir = new File(root, "root" + i);
+            File file = new File(dir, "META-INF/types/" + Runnable.class.getName());
+            assertTrue(file.getParentFile().mkdirs());
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < 50; j++) {
+                content.append("org.example.P").append(i).append('_').append(j).append('\n');
+                expected.add("org.example.P" + i + "_" + j);
+            }
+            write(file, content.toString());
+            urls[i] = dir.toURI().toURL();
+        }
+
+        final Thread caller = Thread.currentThread();
+        final List<String> lines = new ArrayList<>();
+        final List<String> resources = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+            assertTrue(TypeLoader.load(loader, "META-INF/types", Runnable.class, new TypeLoader.LineProcessor() {
+                @Override
+                public void process(ClassLoader classLoader, Class<?> type, String line) {
+                    assertSame(caller, Thread.currentThread());
+                    lines.add(line);
+                }
+            }, executor));
+            assertTrue(TypeLoader.load(loader, "META-INF/types", new TypeLoader.PathFilter() {
+                @Override
+                public boolean accept(String path) {
+                    return path.endsWith(Runnable.class.getName());
+                }
+            }, new TypeLoader.ResourceProcessor() {
+                @Override
+                public void process(ClassLoader classLoader, String line) {
+                    assertSame(caller, Thread.currentThread());
+                    resources.add(line);
+                }
+            }, executor));
+            assertEquals(expected, new TypeLoader(executor).entries(loader, Runnable.class));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(expected, lines);
+        assertEquals(expected, resources);
+    }
+
+    @Test
+    public void testParallelLoadFromWithinItsForkJoinPoolReadsSequentially() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final ClassLoader loader = loader();
+            List<String> lines = pool.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    final List<String> lines = new ArrayList<>();
+                    // a provider initializing its subsystem on the only thread of the pool
+                    assertTrue(TypeLoader.load(loader, "META-INF/types", Runnable.class, new TypeLoader.LineProcessor() {
+                        @Override
+                        public void process(ClassLoader classLoader, Class<?> type, String line) {
+                            lines.add(line);
+                        }
+                    }, pool));
+                    return lines;
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("org.example.One", "org.example.Two"), lines);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testParallelLoadPropagatesProcessorFailures() throws IOException {
+        TypeLoader.load(loader(), "META-INF/types", Runnable.class, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                throw new IllegalStateException(line);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        File second = new File(root, "second");
+        File file = new File(second, "META-INF/types/" + Runnable.class.getName());
+        assertTrue(file.getParentFile().mkdirs());
+        write(file, "org.example.Three\n");
+        URL first = root.toURI().toURL();
+        URL[] urls = {first, second.toURI().toURL()};
+
+        try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+            List<IndexEntry> entries = TypeLoader.stream(loader, Runnable.class).collect(Collectors.toList());
+            assertEquals(3, entries.size());
+            assertEquals("org.example.One", entries.get(0).getName());
+            assertEquals("org.example.Three", entries.get(2).getName());
+            assertEquals(new URL(first, "META-INF/types/" + Runnable.class.getName()), entries.get(0).getSource());
+            assertEquals(new URL(urls[1], "META-INF/types/" + Runnable.class.getName()), entries.get(2).getSource());
+        }
+    }
+
+    @Test
+    public void testStreamAttributes() throws IOException {
+        write(new File(root, "META-INF/types/" + Runnable.class.getName()),
+            "org.example.One #@name=one;qualifiers=fast\norg.example.Two #@name=two;priority=10\norg.example.Three\n");
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null)) {
+            List<IndexEntry> entries = TypeLoader.stream(loader, Runnable.class).collect(Collectors.toList());
+            assertEquals("one", entries.get(0).getAttributes().getName());
+            assertTrue(entries.get(0).getAttributes().hasQualifier("fast"));
+            assertEquals(10, entries.get(1).getAttributes().getPriority());
+            assertTrue(entries.get(2).getAttributes().isEmpty());
+
+            assertEquals(Arrays.asList("org.example.Two", "org.example.One", "org.example.Three"), TypeLoader.stream(loader, Runnable.class)
+                .sorted(IndexEntry.BY_PRIORITY).map(IndexEntry::getName).collect(Collectors.toList()));
+            assertEquals(Collections.singletonList("org.example.One"), TypeLoader.stream(loader, Runnable.class)
+                .filter(e -> e.getAttributes().hasQualifier("fast")).map(IndexEntry::getName).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testStreamIsLazy() throws IOException {
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger opened = new AtomicInteger();
+        final URL url = root.toURI().toURL();
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.incrementAndGet();
+                final URL resource = new URL(url, name);
+                URL counting = new URL(null, resource.toString(), new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL u) throws IOException {
+                        opened.incrementAndGet();
+                        return resource.openConnection();
+                    }
+                });
+                return Collections.enumeration(Arrays.asList(counting, counting, counting));
+            }
+        };
+
+        Stream<IndexEntry> stream = TypeLoader.stream(loader, Runnable.class);
+        assertEquals(0, lookups.get());
+        assertEquals("org.example.One", stream.findFirst().get().getName());
+        assertEquals(1, lookups.get());
+        assertEquals(1, opened.get());
+
+        assertEquals(6, TypeLoader.stream(loader, Runnable.class).count());
+        assertEquals(4, opened.get());
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two"), TypeLoader.stream(loader, Runnable.class)
+            .map(IndexEntry::getName).limit(2).collect(Collectors.toList()));
+        assertEquals(5, opened.get());
+    }
+
+    @Test
+    public void testEntriesAsync() throws Exception {
+        File services = new File(root, "META-INF/types/" + Callable.class.getName());
+        write(services, "org.example.Task\n");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            TypeLoader typeLoader = new TypeLoader(executor);
+            ClassLoader loader = loader();
+            Map<Class<?>, CompletableFuture<List<String>>> futures = typeLoader.entriesAsync(loader, "META-INF/types",
+                Arrays.<Class<?>>asList(Runnable.class, Callable.class, Thread.class));
+            assertEquals(Arrays.asList(Runnable.class, Callable.class, Thread.class), new ArrayList<>(futures.keySet()));
+            assertEquals(Arrays.asList("org.example.One", "org.example.Two"), futures.get(Runnable.class).get(10, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("org.example.Task"), futures.get(Callable.class).get(10, TimeUnit.SECONDS));
+            assertEquals(Collections.emptyList(), futures.get(Thread.class).get(10, TimeUnit.SECONDS));
+
+            // shared with the synchronous methods through the cache
+            write(index, "org.example.Three\n");
+            assertSame(futures.get(Runnable.class).get(), typeLoader.entries(loader, Runnable.class));
+            assertSame(typeLoader.entries(loader, Runnable.class), typeLoader.entriesAsync(loader, Runnable.class).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEntriesAsyncReadsAllTypesTogether() throws Exception {
+        File services = new File(root, "META-INF/types/" + Callable.class.getName());
+        write(services, "org.example.Task\n");
+        final AtomicInteger tasks = new AtomicInteger();
+        final AtomicInteger lookups = new AtomicInteger();
+        ClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.incrementAndGet();
+                return super.getResources(name);
+            }
+        };
+
+        TypeLoader typeLoader = new TypeLoader(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.incrementAndGet();
+                command.run();
+            }
+        });
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two"), typeLoader.entries(loader, Runnable.class));
+        tasks.set(0);
+        lookups.set(0);
+
+        Map<Class<?>, CompletableFuture<List<String>>> futures = typeLoader.entriesAsync(loader, "META-INF/types",
+            Arrays.<Class<?>>asList(Runnable.class, Callable.class, Thread.class));
+        assertEquals(1, tasks.get());
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two"), futures.get(Runnable.class).get());
+        assertEquals(Collections.singletonList("org.example.Task"), futures.get(Callable.class).get());
+        assertEquals(Collections.emptyList(), futures.get(Thread.class).get());
+
+        // the classpath was listed without a single getResources call, and every type was cached by that pass
+        assertEquals(0, lookups.get());
+        assertSame(futures.get(Callable.class).get(), typeLoader.entries(loader, Callable.class));
+        assertSame(futures.get(Thread.class).get(), typeLoader.entries(loader, Thread.class));
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void testEntriesAsyncLooksUpBatchesOnceWithUnknownClassLoaders() throws Exception {
+        final URL url = root.toURI().toURL();
+        final List<String> lookups = Collections.synchronizedList(new ArrayList<String>());
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.add(name);
+                return Collections.enumeration(Collections.singletonList(new URL(url, name)));
+            }
+        };
+
+        TypeLoader typeLoader = new TypeLoader();
+        Map<Class<?>, CompletableFuture<List<String>>> futures = typeLoader.entriesAsync(loader, "META-INF/types",
+            Arrays.<Class<?>>asList(Runnable.class, Callable.class));
+        assertEquals(Arrays.asList("org.example.One", "org.example.Two"), futures.get(Runnable.class).get(10, TimeUnit.SECONDS));
+        futures.get(Callable.class).get(10, TimeUnit.SECONDS);
+        // one lookup per type, none for the directory
+        assertEquals(Arrays.asList("META-INF/types/" + Runnable.class.getName(), "META-INF/types/" + Callable.class.getName()), lookups);
+    }
+
+    @Test
+    public void testEntriesAsyncSharesInFlightReads() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger lookups = new AtomicInteger();
+        final URL url = root.toURI().toURL();
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return Collections.enumeration(Collections.singletonList(new URL(url, name)));
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TypeLoader typeLoader = new TypeLoader(executor);
+            CompletableFuture<List<String>> first = typeLoader.entriesAsync(loader, Runnable.class);
+            CompletableFuture<List<String>> second = typeLoader.entriesAsync(loader, Runnable.class);
+            assertFalse(first.isDone());
+            release.countDown();
+            assertEquals(Arrays.asList("org.example.One", "org.example.Two"), first.get(10, TimeUnit.SECONDS));
+            assertSame(first.get(), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, lookups.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEntriesAsyncFailure() throws Exception {
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            public Enumeration<URL> getResources(String name) {
+                throw new IllegalStateException("boom");
+            }
+        };
+
+        TypeLoader typeLoader = new TypeLoader();
+        try {
+            typeLoader.entriesAsync(loader, Runnable.class).get(10, TimeUnit.SECONDS);
+            fail("expected a failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            typeLoader.entries(loader, Runnable.class);
+            fail("expected a failure");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testLoadAll() throws IOException {
+        write(new File(root, "META-INF/types/" + Callable.class.getName()), "org.example.Task\n");
+        File second = new File(root.getParentFile(), root.getName() + "-second");
+        File secondIndex = new File(second, "META-INF/types/" + Runnable.class.getName());
+        assertTrue(secondIndex.getParentFile().mkdirs());
+        write(secondIndex, "org.example.Two\norg.example.Three\n");
+        File jar = new File(root.getParentFile(), root.getName() + ".jar");
+        writeJar(jar, true, "META-INF/types/" + Runnable.class.getName(), "org.example.Four\norg.example.One\n",
+            "META-INF/types/" + Callable.class.getName(), "org.example.Job\n",
+            "META-INF/types/" + Thread.class.getName(), "org.example.Unused\n");
+
+        List<String> lines = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL(), second.toURI().toURL(), jar.toURI().toURL()}, null)) {
+            assertTrue(TypeLoader.loadAll(loader, Arrays.asList(Callable.class, Runnable.class, Executor.class), recorder(lines)));
+        }
+        assertEquals(Arrays.asList(
+            "Callable:org.example.Task", "Callable:org.example.Job",
+            "Runnable:org.example.One", "Runnable:org.example.Two", "Runnable:org.example.Three", "Runnable:org.example.Four"), lines);
+    }
+
+    @Test
+    public void testLoadAllWithoutDirectoryEntries() throws IOException {
+        File jar = new File(root.getParentFile(), root.getName() + ".jar");
+        writeJar(jar, false, "META-INF/types/" + Runnable.class.getName(), "org.example.One\n",
+            "META-INF/types/" + Callable.class.getName(), "org.example.Job\n");
+
+        List<String> lines = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)) {
+            assertTrue(TypeLoader.loadAll(loader, "META-INF/types", Arrays.asList(Runnable.class, Callable.class), recorder(lines)));
+        }
+        assertEquals(Arrays.asList("Runnable:org.example.One", "Callable:org.example.Job"), lines);
+    }
+
+    @Test
+    public void testLoadAllWithExplodedRootAndJarWithoutDirectoryEntries() throws IOException {
+        File jar = new File(root.getParentFile(), root.getName() + ".jar");
+        writeJar(jar, false, "META-INF/types/" + Runnable.class.getName(), "org.example.Zero\n",
+            "META-INF/types/" + Callable.class.getName(), "org.example.Job\n");
+
+        List<String> lines = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL(), root.toURI().toURL()}, null)) {
+            assertTrue(TypeLoader.loadAll(loader, "META-INF/types", Arrays.asList(Runnable.class, Callable.class), recorder(lines)));
+        }
+        assertEquals(Arrays.asList("Runnable:org.example.Zero", "Runnable:org.example.One", "Runnable:org.example.Two",
+            "Callable:org.example.Job"), lines);
+    }
+
+    @Test
+    public void testLoadAllListsEveryRootOnce() throws IOException {
+        File jar = new File(root.getParentFile(), root.getName() + ".jar");
+        writeJar(jar, false, "META-INF/types/" + Runnable.class.getName(), "org.example.Zero\n",
+            "META-INF/types/" + Callable.class.getName(), "org.example.Job\n");
+        // a manifest-only jar, as used by test runners, pointing at the jar above
+        File booter = new File(root.getParentFile(), root.getName() + "-booter.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, jar.getName());
+        new JarOutputStream(new FileOutputStream(booter), manifest).close();
+
+        final List<String> lookups = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{booter.toURI().toURL(), root.toURI().toURL()}, null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.add(name);
+                return super.getResources(name);
+            }
+        }) {
+            assertTrue(TypeLoader.loadAll(loader, "META-INF/types", Arrays.asList(Runnable.class, Callable.class, Thread.class), recorder(lines)));
+        }
+        assertEquals(Collections.emptyList(), lookups);
+        assertEquals(Arrays.asList("Runnable:org.example.Zero", "Runnable:org.example.One", "Runnable:org.example.Two",
+            "Callable:org.example.Job"), lines);
+    }
+
+    @Test
+    public void testLoadAllLooksUpEveryTypeWithUnknownClassLoaders() throws IOException {
+        final URL url = root.toURI().toURL();
+        final List<String> lookups = new ArrayList<>();
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                lookups.add(name);
+                return Collections.enumeration(Collections.singletonList(new URL(url, name)));
+            }
+        };
+
+        List<String> lines = new ArrayList<>();
+        assertTrue(TypeLoader.loadAll(loader, "META-INF/types", Collections.singletonList(Runnable.class), recorder(lines)));
+        assertEquals(Collections.singletonList("META-INF/types/" + Runnable.class.getName()), lookups);
+        assertEquals(Arrays.asList("Runnable:org.example.One", "Runnable:org.example.Two"), lines);
+    }
+
+    private static TypeLoader.LineProcessor recorder(final List<String> lines) {
+        return new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                lines.add(type.getSimpleName() + ":" + line);
+            }
+        };
+    }
+
+    private static void writeJar(File jar, boolean directories, String... namesAndContents) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            if (directories) {
+                out.putNextEntry(new ZipEntry("META-INF/"));
+                out.closeEntry();
+                out.putNextEntry(new ZipEntry("META-INF/types/"));
+                out.closeEntry();
+            }
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private ClassLoader loader() throws IOException {
+        return new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map from class loaders to values that does not keep the class loaders reachable. Entries of collected
+ * class loaders are dropped on the next access. Values must not reference their class loader, or they would keep it
+ * alive.
+ *
+ * @author Andres Almiray
+ */
+final class ClassLoaderCache<V> {
+    private final ConcurrentMap<LoaderKey, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+
+    V get(ClassLoader classLoader) {
+        expungeStaleEntries();
+        return map.get(new LoaderKey(classLoader, null));
+    }
+
+    /**
+     * Returns the value of {@code classLoader}, storing {@code value} first if there is none.
+     */
+    V putIfAbsent(ClassLoader classLoader, V value) {
+        expungeStaleEntries();
+        V previous = map.putIfAbsent(new LoaderKey(classLoader, queue), value);
+        return previous != null ? previous : value;
+    }
+
+    V remove(ClassLoader classLoader) {
+        expungeStaleEntries();
+        return map.remove(new LoaderKey(classLoader, null));
+    }
+
+    void clear() {
+        map.clear();
+        expungeStaleEntries();
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = queue.poll()) != null) {
+            map.remove(reference);
+        }
+    }
+
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+        private final int hash;
+
+        private LoaderKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.hash = System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LoaderKey)) return false;
+            ClassLoader classLoader = get();
+            return classLoader != null && classLoader == ((LoaderKey) o).get();
+        }
+    }
+}
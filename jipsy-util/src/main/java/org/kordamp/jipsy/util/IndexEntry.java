@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.kordamp.jipsy.format.ProviderAttributes;
+
+import java.net.URL;
+import java.util.Comparator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An entry of an index file together with the resource it was read from and the attributes recorded for it, so
+ * that entries can be filtered and ordered before their classes are loaded.
+ *
+ * @author Andres Almiray
+ */
+public final class IndexEntry {
+    /**
+     * Orders entries by descending priority. Entries of equal priority keep their order in a stable sort.
+     */
+    public static final Comparator<IndexEntry> BY_PRIORITY = new Comparator<IndexEntry>() {
+        @Override
+        public int compare(IndexEntry a, IndexEntry b) {
+            return Integer.compare(b.attributes.getPriority(), a.attributes.getPriority());
+        }
+    };
+
+    private final String name;
+    private final URL source;
+    private final ProviderAttributes attributes;
+
+    public IndexEntry(String name, URL source) {
+        this(name, source, ProviderAttributes.NONE);
+    }
+
+    public IndexEntry(String name, URL source, ProviderAttributes attributes) {
+        this.name = requireNonNull(name, "Argument 'name' must not be null");
+        this.source = requireNonNull(source, "Argument 'source' must not be null");
+        this.attributes = requireNonNull(attributes, "Argument 'attributes' must not be null");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public URL getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the attributes recorded for this entry, {@link ProviderAttributes#NONE} if there are none.
+     */
+    public ProviderAttributes getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IndexEntry that = (IndexEntry) o;
+        // compare URLs as strings, URL.equals may resolve host names
+        return name.equals(that.name) && source.toString().equals(that.source.toString()) && attributes.equals(that.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * name.hashCode() + source.toString().hashCode()) + attributes.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return attributes.isEmpty() ? name + " (" + source + ")" : name + " [" + attributes + "] (" + source + ")";
+    }
+}
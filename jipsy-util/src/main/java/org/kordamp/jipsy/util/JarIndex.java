@@ -0,0 +1,170 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Sorted entry names of a jar file, so that the entries below a path can be found without walking the whole jar,
+ * along with the {@code Class-Path} of its manifest. Indexes are cached per jar file and rebuilt when its size or modification time changes. Only the
+ * {@value #MAX_INDEXES} most recently used indexes are kept, so that jars extracted to a new location on every
+ * redeployment do not pile up.
+ *
+ * @author Andres Almiray
+ */
+final class JarIndex {
+    static final int MAX_INDEXES = 256;
+
+    // guarded by itself, in access order
+    private static final Map<String, JarIndex> INDEXES = new LinkedHashMap<String, JarIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JarIndex> eldest) {
+            return size() > MAX_INDEXES;
+        }
+    };
+
+    private final long length;
+    private final long lastModified;
+    private final String[] names;
+    private final List<String> classPath;
+
+    private JarIndex(long length, long lastModified, JarFile jar) throws IOException {
+        this.length = length;
+        this.lastModified = lastModified;
+        List<String> names = new ArrayList<>(jar.size());
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        this.names = names.toArray(new String[0]);
+        Arrays.sort(this.names);
+
+        Manifest manifest = jar.getManifest();
+        String value = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+        this.classPath = value != null && !value.trim().isEmpty()
+            ? Collections.unmodifiableList(Arrays.asList(value.trim().split("\\s+"))) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the index of {@code file}, opening it only if the index has to be built.
+     */
+    static JarIndex of(File file) throws IOException {
+        return of(file, null);
+    }
+
+    /**
+     * Returns the index of {@code jar}, which was opened from {@code file}.
+     */
+    static JarIndex of(File file, JarFile jar) throws IOException {
+        String key = file.getAbsolutePath();
+        // stat before listing, a concurrent change then leads to a rebuild on the next call
+        long length = file.length();
+        long lastModified = file.lastModified();
+        JarIndex index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(key);
+        }
+        if (index == null || index.length != length || index.lastModified != lastModified) {
+            // built outside the lock, concurrent first calls may list the same jar more than once
+            if (jar != null) {
+                index = new JarIndex(length, lastModified, jar);
+            } else {
+                try (JarFile opened = new JarFile(file)) {
+                    index = new JarIndex(length, lastModified, opened);
+                }
+            }
+            synchronized (INDEXES) {
+                INDEXES.put(key, index);
+            }
+        }
+        return index;
+    }
+
+    static void clear() {
+        synchronized (INDEXES) {
+            INDEXES.clear();
+        }
+    }
+
+    static int size() {
+        synchronized (INDEXES) {
+            return INDEXES.size();
+        }
+    }
+
+    /**
+     * Whether the jar has an entry named {@code name}.
+     */
+    boolean contains(String name) {
+        return Arrays.binarySearch(names, name) >= 0;
+    }
+
+    /**
+     * Returns the relative URLs listed by the {@code Class-Path} attribute of the jar's manifest, in order.
+     */
+    List<String> classPath() {
+        return classPath;
+    }
+
+    /**
+     * Returns the names starting with {@code prefix}, in sorted order.
+     */
+    List<String> namesStartingWith(String prefix) {
+        int from = Arrays.binarySearch(names, prefix);
+        if (from < 0) {
+            from = -(from + 1);
+        }
+        int to = from;
+        while (to < names.length && names[to].startsWith(prefix)) {
+            to++;
+        }
+        if (from == to) {
+            return Collections.emptyList();
+        }
+
+        final int offset = from;
+        final int size = to - from;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("index: " + index);
+                }
+                return names[offset + index];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.kordamp.jipsy.format.BinaryIndex;
+import org.kordamp.jipsy.format.IndexReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Looks up index entries through the binary indexes written by the processors when {@code spi_index} is set,
+ * falling back to the text index files for classpath roots without one.
+ * <p>
+ * Every root compiled with {@code spi_index} holds a {@code META-INF/jipsy/index.bin} listing all of its index files,
+ * with the size and CRC32 each file had when it was written. When the roots of a class loader can be listed, as for
+ * {@code URLClassLoader}s and the application class loader, they are walked once and their indexes read, memory-mapped
+ * when they are plain files. Lookups then answer from the index of each root that lists the requested file, and only
+ * look for the file itself in roots without one, using the sorted entry names of jars and the file system for
+ * directories; no {@code getResources} call is made. Other class loaders locate indexes and index files through
+ * {@code getResources}.
+ * <p>
+ * An index is only trusted for a file whose contents still match it: the first lookup of a file compares its size and
+ * CRC32, computed from the file's contents for plain files and taken from the jar for jar entries, against the index.
+ * Files missing from the index or changed since, e.g. copied with filtering or merged into a shaded jar, are read.
+ * Roots, indexes and checks are kept for the lifetime of this instance, so changes made to the classpath afterwards
+ * are only seen after {@link #invalidate(ClassLoader)}. Results are the same as with
+ * {@link TypeLoader#load(ClassLoader, String, Class, TypeLoader.LineProcessor)}, in classpath order. Class loaders are
+ * only weakly referenced, and instances may be used concurrently.
+ *
+ * @author Andres Almiray
+ */
+public class ModuleIndexLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(ModuleIndexLoader.class);
+    private static final String META_INF_TYPES = "META-INF/types";
+
+    private final ClassLoaderCache<Classpath> cache = new ClassLoaderCache<>();
+
+    /**
+     * Returns the entries listed for {@code type} in {@code META-INF/types}.
+     */
+    public List<String> entries(ClassLoader classLoader, Class<?> type) {
+        return entries(classLoader, META_INF_TYPES, type);
+    }
+
+    /**
+     * Returns the entries listed for {@code type} below {@code path}, in classpath order. Resources that cannot be
+     * listed yield an empty list.
+     */
+    public List<String> entries(ClassLoader classLoader, String path, Class<?> type) {
+        final List<String> entries = new ArrayList<>();
+        process(classLoader, path, type, new TypeLoader.LineProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, String line) {
+                entries.add(line);
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Indexed variant of {@link TypeLoader#load(ClassLoader, String, Class, TypeLoader.LineProcessor)}.
+     */
+    public boolean process(final ClassLoader classLoader, String path, final Class<?> type, final TypeLoader.LineProcessor processor) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        requireNonNull(path, "Argument 'path' must not be null");
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(processor, "Argument 'processor' must not be null");
+        if (path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Argument 'path' must not be blank");
+        }
+        String section = path.endsWith("/") ? path : path + "/";
+
+        Classpath classpath = classpath(classLoader);
+        if (!classpath.covers(section)) {
+            return TypeLoader.load(classLoader, path, type, processor);
+        }
+
+        IndexReader.EntryHandler handler = new IndexReader.EntryHandler() {
+            @Override
+            public void entry(CharSequence entry) {
+                processor.process(classLoader, type, entry.toString());
+            }
+        };
+        if (classpath.roots == null) {
+            return processResources(classpath, classLoader, section, type, handler);
+        }
+
+        String resourceName = section + type.getName();
+        IndexReader reader = new IndexReader();
+        for (File root : classpath.roots) {
+            BinaryIndex index = classpath.indexes.get(root.getPath());
+            boolean indexed = index != null && index.get(section, type.getName()) != null;
+            String location = root.getPath() + "!/" + resourceName;
+            if (indexed && classpath.matched(location)) {
+                // checked by an earlier lookup
+                emit(index, section, type.getName(), handler);
+                continue;
+            }
+            if (root.isDirectory()) {
+                File file = new File(root, resourceName);
+                if (!file.isFile()) {
+                    continue;
+                }
+                if (indexed && classpath.matches(location, index, section, type.getName(), file)) {
+                    emit(index, section, type.getName(), handler);
+                    continue;
+                }
+                LOG.debug("Reading {} definitions from {}", type.getName(), file);
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    reader.read(in, handler);
+                } catch (IOException e) {
+                    LOG.warn("Could not load " + type.getName() + " definitions from " + file, e);
+                }
+            } else if (root.isFile()) {
+                try {
+                    if (!JarIndex.of(root).contains(resourceName)) {
+                        continue;
+                    }
+                    try (JarFile jar = new JarFile(root)) {
+                        JarEntry entry = jar.getJarEntry(resourceName);
+                        if (entry == null) {
+                            continue;
+                        }
+                        if (indexed && classpath.matches(location, index, section, type.getName(), entry)) {
+                            emit(index, section, type.getName(), handler);
+                            continue;
+                        }
+                        LOG.debug("Reading {} definitions from {}!/{}", type.getName(), root, resourceName);
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            reader.read(in, handler);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Could not load " + type.getName() + " definitions from " + location, e);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the roots, indexes and checks read for {@code classLoader}.
+     */
+    public void invalidate(ClassLoader classLoader) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        cache.remove(classLoader);
+    }
+
+    /**
+     * Drops all roots, indexes and checks read.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * Looks up the index files of {@code type} through {@code getResources}, for class loaders whose roots cannot be
+     * listed.
+     */
+    private static boolean processResources(Classpath classpath, ClassLoader classLoader, String section, Class<?> type, IndexReader.EntryHandler handler) {
+        String resourceName = section + type.getName();
+        Enumeration<URL> urls;
+        try {
+            urls = classLoader.getResources(resourceName);
+        } catch (IOException ioe) {
+            LOG.error(ioe.getClass().getName() + " error loading resources of type \"" + type.getName() + "\" from \"" + section + "\".");
+            return false;
+        }
+
+        IndexReader reader = new IndexReader();
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            String location = url.toString();
+            BinaryIndex index = location.endsWith(resourceName) ? classpath.indexes.get(location.substring(0, location.length() - resourceName.length())) : null;
+            if (index != null && index.get(section, type.getName()) != null && classpath.matches(location, index, section, type.getName(), url)) {
+                emit(index, section, type.getName(), handler);
+                continue;
+            }
+
+            LOG.debug("Reading {} definitions from {}", type.getName(), url);
+            try (InputStream in = url.openStream()) {
+                reader.read(in, handler);
+            } catch (IOException e) {
+                LOG.warn("Could not load " + type.getName() + " definitions from " + url, e);
+            }
+        }
+        return true;
+    }
+
+    private static void emit(BinaryIndex index, String section, String name, IndexReader.EntryHandler handler) {
+        for (String entry : index.get(section, name)) {
+            handler.entry(entry);
+        }
+    }
+
+    private Classpath classpath(ClassLoader classLoader) {
+        Classpath classpath = cache.get(classLoader);
+        if (classpath == null) {
+            // concurrent first lookups may list the classpath more than once, all but one result are dropped
+            classpath = cache.putIfAbsent(classLoader, Classpath.of(classLoader));
+        }
+        return classpath;
+    }
+
+    /**
+     * Size and CRC32 of the contents of {@code file}.
+     */
+    private static long[] checksum(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return new long[]{bytes.length, crc.getValue()};
+    }
+
+    /**
+     * Classpath roots of a class loader with the index of each, and the outcome of comparing index files against
+     * their index.
+     */
+    private static final class Classpath {
+        // roots in classpath order, null if the class loader's roots cannot be listed
+        private final List<File> roots;
+        // root path, or root URL when roots cannot be listed -> index
+        private final Map<String, BinaryIndex> indexes;
+        // location of an index file -> whether it matches the index of its root
+        private final ConcurrentMap<String, Boolean> matches = new ConcurrentHashMap<>();
+
+        private Classpath(List<File> roots, Map<String, BinaryIndex> indexes) {
+            this.roots = roots;
+            this.indexes = indexes;
+        }
+
+        private static Classpath of(ClassLoader classLoader) {
+            List<File> roots = TypeLoader.classpathRoots(classLoader);
+            if (roots == null) {
+                return new Classpath(null, readIndexes(classLoader));
+            }
+
+            Map<String, BinaryIndex> indexes = new LinkedHashMap<>();
+            for (File root : roots) {
+                try {
+                    BinaryIndex index = readIndex(root);
+                    if (index != null) {
+                        LOG.debug("Read index {} of {}", index, root);
+                        indexes.put(root.getPath(), index);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Could not read index of " + root + ", using its index files instead", e);
+                }
+            }
+            return new Classpath(Collections.unmodifiableList(roots), Collections.unmodifiableMap(indexes));
+        }
+
+        private boolean covers(String section) {
+            for (BinaryIndex index : indexes.values()) {
+                if (index.covers(section)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matched(String location) {
+            return Boolean.TRUE.equals(matches.get(location));
+        }
+
+        private boolean matches(String location, BinaryIndex index, String section, String name, Object file) {
+            Boolean matches = this.matches.get(location);
+            if (matches == null) {
+                matches = check(index, section, name, file);
+                this.matches.putIfAbsent(location, matches);
+            }
+            return matches;
+        }
+
+        /**
+         * Whether {@code index} lists {@code file}, a plain file, jar entry or URL, with its current size and CRC32.
+         */
+        private static boolean check(BinaryIndex index, String section, String name, Object file) {
+            try {
+                if (file instanceof URL) {
+                    URL url = (URL) file;
+                    switch (url.getProtocol()) {
+                        case "file":
+                            file = new File(url.toURI());
+                            break;
+                        case "jar":
+                            URLConnection connection = url.openConnection();
+                            connection.setUseCaches(false);
+                            file = connection instanceof JarURLConnection ? ((JarURLConnection) connection).getJarEntry() : null;
+                            break;
+                        default:
+                            return false;
+                    }
+                }
+                if (file instanceof JarEntry) {
+                    JarEntry entry = (JarEntry) file;
+                    return entry.getSize() >= 0 && entry.getCrc() >= 0 && index.matches(section, name, entry.getSize(), entry.getCrc());
+                }
+                if (file instanceof File && ((File) file).isFile()) {
+                    long[] checksum = checksum((File) file);
+                    return index.matches(section, name, checksum[0], checksum[1]);
+                }
+                return false;
+            } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+                LOG.debug("Could not check " + file + " against its index", e);
+                return false;
+            }
+        }
+
+        private static BinaryIndex readIndex(File root) throws IOException {
+            if (root.isDirectory()) {
+                File file = new File(root, BinaryIndex.RESOURCE_NAME);
+                return file.isFile() ? read(file) : null;
+            }
+            if (!root.isFile() || !JarIndex.of(root).contains(BinaryIndex.RESOURCE_NAME)) {
+                return null;
+            }
+            try (JarFile jar = new JarFile(root)) {
+                JarEntry entry = jar.getJarEntry(BinaryIndex.RESOURCE_NAME);
+                if (entry == null) {
+                    return null;
+                }
+                try (InputStream in = jar.getInputStream(entry)) {
+                    return BinaryIndex.read(in);
+                }
+            }
+        }
+
+        private static Map<String, BinaryIndex> readIndexes(ClassLoader classLoader) {
+            Map<String, BinaryIndex> indexes = new LinkedHashMap<>();
+            Enumeration<URL> urls;
+            try {
+                urls = classLoader.getResources(BinaryIndex.RESOURCE_NAME);
+            } catch (IOException ioe) {
+                LOG.debug(ioe.getClass().getName() + " error loading resources from \"" + BinaryIndex.RESOURCE_NAME + "\".");
+                return Collections.emptyMap();
+            }
+
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                String location = url.toString();
+                if (!location.endsWith(BinaryIndex.RESOURCE_NAME)) {
+                    continue;
+                }
+                String root = location.substring(0, location.length() - BinaryIndex.RESOURCE_NAME.length());
+                if (indexes.containsKey(root)) {
+                    continue;
+                }
+                try {
+                    BinaryIndex index = read(url);
+                    LOG.debug("Read index {} of {}", index, root);
+                    indexes.put(root, index);
+                } catch (IOException e) {
+                    LOG.warn("Could not read index " + url + ", using its index files instead", e);
+                }
+            }
+            return Collections.unmodifiableMap(indexes);
+        }
+
+        private static BinaryIndex read(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+                return BinaryIndex.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        private static BinaryIndex read(URL url) throws IOException {
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    return read(new File(url.toURI()));
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    // not a plain file, read below
+                }
+            }
+            try (InputStream in = url.openStream()) {
+                return BinaryIndex.read(in);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.kordamp.jipsy.format.IndexReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Looks up providers through the registry classes generated by the processors when {@code spi_registry} is set,
+ * falling back to the text index files for classpath roots without a registry.
+ * <p>
+ * Every root that was compiled with a registry holds a marker resource {@code META-INF/jipsy/services.registry}
+ * (or {@code types.registry}) naming its registry class. The marker is looked up next to the index directory, so
+ * providers indexed below {@code <spi_dir>META-INF/services} use {@code <spi_dir>META-INF/jipsy/services.registry}. Providers listed by a registry are created through
+ * constructor references and class literals instead of {@code Class.forName} and reflective instantiation. For the
+ * remaining roots the index file is parsed, providers are resolved reflectively and created through
+ * {@link ProviderSuppliers}, so results are the same either way, in classpath order. Registries are instantiated on
+ * every call; callers that look up the same service repeatedly should keep the returned list.
+ *
+ * @author Andres Almiray
+ */
+public final class ProviderFactories {
+    private static final Logger LOG = LoggerFactory.getLogger(ProviderFactories.class);
+    private static final String META_INF_SERVICES = "META-INF/services";
+    private static final String META_INF_TYPES = "META-INF/types";
+    private static final String REGISTRY_DIR = "jipsy/";
+    private static final String REGISTRY_SUFFIX = ".registry";
+
+    private ProviderFactories() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns a factory per provider of {@code service} listed in {@code META-INF/services}.
+     */
+    public static <T> List<Supplier<T>> services(ClassLoader classLoader, Class<T> service) {
+        return services(classLoader, META_INF_SERVICES, service);
+    }
+
+    /**
+     * Returns a factory per provider of {@code service} listed below {@code path}, in classpath order. Factories
+     * taken from a registry call the provider's constructor directly; the others load the provider
+     * reflectively, instantiate it through {@link ProviderSuppliers} and throw {@code ServiceConfigurationError} when that fails.
+     */
+    public static <T> List<Supplier<T>> services(final ClassLoader classLoader, String path, final Class<T> service) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        String resourceName = resourceName(path, service);
+
+        final List<Supplier<T>> factories = new ArrayList<>();
+        Map<String, Function<String, ?>> registries = registries(classLoader, path);
+        for (URL url : resources(classLoader, resourceName)) {
+            Object[] registered = registered(registries, url, resourceName, service);
+            if (registered instanceof Supplier<?>[]) {
+                for (Object factory : registered) {
+                    factories.add(cast(factory));
+                }
+                continue;
+            }
+
+            for (final String provider : read(url, service)) {
+                factories.add(new Supplier<T>() {
+                    @Override
+                    public T get() {
+                        try {
+                            return service.cast(ProviderSuppliers.of(Class.forName(provider, true, classLoader)).get());
+                        } catch (Exception | LinkageError e) {
+                            // suppliers rethrow checked exceptions of constructors as is
+                            throw new ServiceConfigurationError(service.getName() + ": Provider " + provider + " could not be instantiated", e);
+                        }
+                    }
+                });
+            }
+        }
+        return factories;
+    }
+
+    /**
+     * Returns the classes listed for {@code type} in {@code META-INF/types}.
+     */
+    public static List<Class<?>> types(ClassLoader classLoader, Class<?> type) {
+        return types(classLoader, META_INF_TYPES, type);
+    }
+
+    /**
+     * Returns the classes listed for {@code type} below {@code path}, in classpath order. Classes taken from a
+     * registry are class literals; the others are loaded without initializing them, skipping those that cannot be
+     * loaded.
+     */
+    public static List<Class<?>> types(ClassLoader classLoader, String path, Class<?> type) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        String resourceName = resourceName(path, type);
+
+        List<Class<?>> types = new ArrayList<>();
+        Map<String, Function<String, ?>> registries = registries(classLoader, path);
+        for (URL url : resources(classLoader, resourceName)) {
+            Object[] registered = registered(registries, url, resourceName, type);
+            if (registered instanceof Class<?>[]) {
+                Collections.addAll(types, (Class<?>[]) registered);
+                continue;
+            }
+
+            for (String provider : read(url, type)) {
+                try {
+                    types.add(Class.forName(provider, false, classLoader));
+                } catch (ClassNotFoundException | LinkageError e) {
+                    LOG.warn("Could not load " + provider + " listed for " + type.getName() + " in " + url, e);
+                }
+            }
+        }
+        return types;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> cast(Object factory) {
+        // the processor only lists providers assignable to the service
+        return (Supplier<T>) factory;
+    }
+
+    private static Object[] registered(Map<String, Function<String, ?>> registries, URL url, String resourceName, Class<?> type) {
+        String location = url.toString();
+        if (!location.endsWith(resourceName)) {
+            return null;
+        }
+        Function<String, ?> registry = registries.get(location.substring(0, location.length() - resourceName.length()));
+        if (registry == null) {
+            return null;
+        }
+        Object registered = registry.apply(type.getName());
+        if (registered instanceof Object[]) {
+            LOG.debug("Using {} definitions registered by {} for {}", type.getName(), registry.getClass().getName(), url);
+            return (Object[]) registered;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the registries found on the classpath, by classpath root. A registry is only used for the root its
+     * marker was found in, so that a registry class shadowed by another root of the same name is ignored.
+     */
+    private static Map<String, Function<String, ?>> registries(ClassLoader classLoader, String path) {
+        // <dir>META-INF/services -> <dir>META-INF/jipsy/services.registry
+        String directory = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        int slash = directory.lastIndexOf('/');
+        String markerName = directory.substring(0, slash + 1) + REGISTRY_DIR + directory.substring(slash + 1) + REGISTRY_SUFFIX;
+
+        Map<String, Function<String, ?>> registries = new HashMap<>();
+        for (URL url : resources(classLoader, markerName)) {
+            String location = url.toString();
+            if (!location.endsWith(markerName)) {
+                continue;
+            }
+            String root = location.substring(0, location.length() - markerName.length());
+            for (String className : read(url, Function.class)) {
+                Function<String, ?> registry = instantiate(classLoader, root, className);
+                if (registry != null) {
+                    registries.put(root, registry);
+                }
+            }
+        }
+        return registries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<String, ?> instantiate(ClassLoader classLoader, String root, String className) {
+        URL classFile = classLoader.getResource(className.replace('.', '/') + ".class");
+        if (classFile == null || !classFile.toString().startsWith(root)) {
+            LOG.debug("Ignoring registry {} of {}, it is not loaded from there", className, root);
+            return null;
+        }
+        try {
+            return (Function<String, ?>) Class.forName(className, true, classLoader).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            LOG.warn("Could not instantiate registry " + className + " of " + root, e);
+            return null;
+        }
+    }
+
+    private static Set<URL> resources(ClassLoader classLoader, String resourceName) {
+        Set<URL> urls = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(resourceName);
+            while (resources.hasMoreElements()) {
+                urls.add(resources.nextElement());
+            }
+        } catch (IOException ioe) {
+            LOG.error(ioe.getClass().getName() + " error loading resources from \"" + resourceName + "\".");
+        }
+        return urls;
+    }
+
+    private static List<String> read(URL url, Class<?> type) {
+        final List<String> entries = new ArrayList<>();
+        LOG.debug("Reading {} definitions from {}", type.getName(), url);
+        try (InputStream in = url.openStream()) {
+            new IndexReader().read(in, new IndexReader.EntryHandler() {
+                @Override
+                public void entry(CharSequence entry) {
+                    entries.add(entry.toString());
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("Could not load " + type.getName() + " definitions from " + url, e);
+        }
+        return entries;
+    }
+
+    private static String resourceName(String path, Class<?> type) {
+        requireNonNull(path, "Argument 'path' must not be null");
+        requireNonNull(type, "Argument 'type' must not be null");
+        if (path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Argument 'path' must not be blank");
+        }
+        return (path.endsWith("/") ? path : path + "/") + type.getName();
+    }
+}
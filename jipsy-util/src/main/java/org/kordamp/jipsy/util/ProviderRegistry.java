@@ -0,0 +1,323 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import org.kordamp.jipsy.format.ProviderAttributes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Resolves and instantiates the providers of a service listed in the index files found through
+ * {@link TypeLoader#stream(ClassLoader, String, Class)}.
+ * <p>
+ * The index files are read when the registry is first used. Provider classes are only loaded, and providers only
+ * instantiated, when asked for, so iterating up to the first provider that fits does not pay for the others:
+ * <pre>
+ * ProviderRegistry&lt;Calculator&gt; calculators = ProviderRegistry.services(classLoader, Calculator.class);
+ * for (Calculator calculator : calculators) { ... }
+ * Optional&lt;Calculator&gt; basic = calculators.find("basic").map(ProviderRegistry.Provider::get);
+ * </pre>
+ * Like {@code java.util.ServiceLoader}, each provider class is listed once, at the position it is first found in
+ * classpath order. Instances are kept according to the registry's {@link Scope}. Registries may be shared by any
+ * number of threads: entries and instances are published through volatile fields, so that lookups after the first one
+ * never block, and each provider is instantiated once per scope however many threads ask for it first. Providers that
+ * cannot be loaded or instantiated throw {@code ServiceConfigurationError} when asked for; nothing is cached for them.
+ * <p>
+ * Providers are instantiated through {@link ProviderSuppliers}. Registries keep their class loader and the instances
+ * they created reachable; keep them as long as the class loader is in use rather than creating them per lookup.
+ *
+ * @author Andres Almiray
+ */
+public final class ProviderRegistry<T> implements Iterable<T> {
+    private static final String META_INF_SERVICES = "META-INF/services";
+
+    /**
+     * How a registry keeps the instances of its providers.
+     */
+    public enum Scope {
+        /**
+         * All providers are instantiated when the registry is first used and the instances are kept. Providers that
+         * fail to instantiate are left for {@link Provider#get()} to report, to every caller alike.
+         */
+        SINGLETON,
+        /**
+         * Each provider is instantiated when first asked for and the instance is kept.
+         */
+        LAZY_SINGLETON,
+        /**
+         * Each provider is instantiated whenever it is asked for.
+         */
+        PROTOTYPE
+    }
+
+    private final ClassLoader classLoader;
+    private final String path;
+    private final Class<T> service;
+    private final Scope scope;
+    private final AtomicReference<List<Provider<T>>> providers = new AtomicReference<>();
+
+    private ProviderRegistry(ClassLoader classLoader, String path, Class<T> service, Scope scope) {
+        this.classLoader = requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        this.path = requireNonNull(path, "Argument 'path' must not be null");
+        this.service = requireNonNull(service, "Argument 'service' must not be null");
+        this.scope = requireNonNull(scope, "Argument 'scope' must not be null");
+        if (path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Argument 'path' must not be blank");
+        }
+    }
+
+    /**
+     * Returns a {@link Scope#LAZY_SINGLETON} registry of the providers of {@code service} listed in
+     * {@code META-INF/services}.
+     */
+    public static <T> ProviderRegistry<T> services(ClassLoader classLoader, Class<T> service) {
+        return services(classLoader, service, Scope.LAZY_SINGLETON);
+    }
+
+    /**
+     * Returns a registry of the providers of {@code service} listed in {@code META-INF/services}.
+     */
+    public static <T> ProviderRegistry<T> services(ClassLoader classLoader, Class<T> service, Scope scope) {
+        return of(classLoader, META_INF_SERVICES, service, scope);
+    }
+
+    /**
+     * Returns a registry of the providers of {@code service} listed below {@code path}.
+     */
+    public static <T> ProviderRegistry<T> of(ClassLoader classLoader, String path, Class<T> service, Scope scope) {
+        return new ProviderRegistry<>(classLoader, path, service, scope);
+    }
+
+    public Class<T> getService() {
+        return service;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Returns the providers in classpath order, without loading their classes.
+     */
+    public List<Provider<T>> providers() {
+        List<Provider<T>> list = providers.get();
+        if (list != null) {
+            return list;
+        }
+
+        list = load();
+        if (!providers.compareAndSet(null, list)) {
+            // concurrent first lookups read the index files more than once, all but one result are dropped
+            // before any provider is instantiated
+            return providers.get();
+        }
+        if (scope == Scope.SINGLETON) {
+            for (Provider<T> provider : list) {
+                try {
+                    provider.get();
+                } catch (ServiceConfigurationError e) {
+                    // thrown again by get(), whichever thread asks first
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a lazy stream of the providers, like {@code ServiceLoader.stream()}.
+     */
+    public Stream<Provider<T>> stream() {
+        return providers().stream();
+    }
+
+    /**
+     * Returns the provider whose {@code name} attribute is {@code name}, without loading any class.
+     */
+    public Optional<Provider<T>> find(String name) {
+        requireNonNull(name, "Argument 'name' must not be null");
+        for (Provider<T> provider : providers()) {
+            if (name.equals(provider.getAttributes().getName())) {
+                return Optional.of(provider);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns an instance of the first provider, if any.
+     */
+    public Optional<T> first() {
+        List<Provider<T>> list = providers();
+        return list.isEmpty() ? Optional.<T>empty() : Optional.of(list.get(0).get());
+    }
+
+    /**
+     * Returns the instances of the providers, each one obtained when the iterator reaches it.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        final Iterator<Provider<T>> iterator = providers().iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!iterator.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return iterator.next().get();
+            }
+        };
+    }
+
+    /**
+     * Drops the providers and the instances kept for them, so that the index files are read again on next use.
+     * Iterations in progress are not affected.
+     */
+    public void reload() {
+        providers.set(null);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + service.getName() + ", " + scope + "]";
+    }
+
+    private List<Provider<T>> load() {
+        List<Provider<T>> list = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Iterator<IndexEntry> entries = TypeLoader.stream(classLoader, path, service).iterator();
+        while (entries.hasNext()) {
+            IndexEntry entry = entries.next();
+            if (names.add(entry.getName())) {
+                list.add(new Provider<>(this, entry));
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * A provider of a registry. Its class is loaded when first needed, and its instances are kept according to the
+     * registry's scope.
+     */
+    public static final class Provider<T> implements Supplier<T> {
+        private final ProviderRegistry<T> registry;
+        private final IndexEntry entry;
+        private final Object lock = new Object();
+        private volatile Class<? extends T> type;
+        private volatile T instance;
+
+        private Provider(ProviderRegistry<T> registry, IndexEntry entry) {
+            this.registry = registry;
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return entry.getName();
+        }
+
+        public IndexEntry getEntry() {
+            return entry;
+        }
+
+        public ProviderAttributes getAttributes() {
+            return entry.getAttributes();
+        }
+
+        /**
+         * Returns the provider class, loading it without initializing it on first call.
+         */
+        public Class<? extends T> type() {
+            Class<? extends T> t = type;
+            if (t == null) {
+                // racing threads load the same class, any of them may be published
+                type = t = resolve();
+            }
+            return t;
+        }
+
+        /**
+         * Returns an instance of the provider according to the registry's scope.
+         */
+        @Override
+        public T get() {
+            if (registry.scope == Scope.PROTOTYPE) {
+                return instantiate();
+            }
+            T i = instance;
+            if (i != null) {
+                return i;
+            }
+            synchronized (lock) {
+                i = instance;
+                if (i == null) {
+                    instance = i = instantiate();
+                }
+                return i;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
+
+        private Class<? extends T> resolve() {
+            Class<?> c;
+            try {
+                c = Class.forName(entry.getName(), false, registry.classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                throw error("not found", e);
+            }
+            if (!registry.service.isAssignableFrom(c)) {
+                throw error("not a subtype", null);
+            }
+            return c.asSubclass(registry.service);
+        }
+
+        private T instantiate() {
+            Class<? extends T> t = type();
+            try {
+                return ProviderSuppliers.of(t).get();
+            } catch (Exception | LinkageError e) {
+                // suppliers rethrow checked exceptions of constructors as is
+                throw error("could not be instantiated", e);
+            }
+        }
+
+        private ServiceConfigurationError error(String message, Throwable cause) {
+            return new ServiceConfigurationError(registry.service.getName() + ": Provider " + entry.getName() + " " + message, cause);
+        }
+    }
+}
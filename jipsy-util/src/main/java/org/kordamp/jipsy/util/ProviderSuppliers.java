@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2013 - 2022 Andres Almiray.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kordamp.jipsy.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Turns the public no-args constructors of provider classes into cached {@code Supplier}s, so that providers created
+ * over and over, such as prototype scoped ones, do not go through reflection every time.
+ * <p>
+ * Suppliers are created once per class through {@code LambdaMetafactory} and perform as well as a constructor
+ * reference. The classes generated that way are defined next to this class, so they are only used for provider
+ * classes this class' loader resolves to the same class. Providers from other class loaders, e.g. those of
+ * application servers or plugins, get a supplier invoking a method handle of the constructor instead. Both kinds
+ * throw whatever the constructor throws, checked exceptions included.
+ *
+ * @author Andres Almiray
+ */
+public final class ProviderSuppliers {
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class);
+    private static final MethodType SUPPLIER = MethodType.methodType(Supplier.class);
+    private static final MethodType GET = MethodType.methodType(Object.class);
+
+    private static final ClassValue<Supplier<?>> SUPPLIERS = new ClassValue<Supplier<?>>() {
+        @Override
+        protected Supplier<?> computeValue(Class<?> type) {
+            return create(type);
+        }
+    };
+
+    private ProviderSuppliers() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the cached supplier calling the public no-args constructor of {@code type}.
+     *
+     * @throws IllegalArgumentException if {@code type} is not a public concrete class with a public no-args constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Supplier<T> of(Class<T> type) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        return (Supplier<T>) SUPPLIERS.get(type);
+    }
+
+    private static Supplier<?> create(Class<?> type) {
+        int modifiers = type.getModifiers();
+        if (type.isInterface() || type.isArray() || type.isPrimitive() || Modifier.isAbstract(modifiers) || !Modifier.isPublic(modifiers)) {
+            throw new IllegalArgumentException(type.getName() + " is not a public concrete class");
+        }
+
+        MethodHandle factory = isVisible(type) ? factory(type) : null;
+        if (factory != null) {
+            try {
+                return (Supplier<?>) factory.invokeExact();
+            } catch (Throwable t) {
+                throw ProviderSuppliers.<RuntimeException>rethrow(t);
+            }
+        }
+
+        try {
+            return new HandleSupplier(MethodHandles.publicLookup().findConstructor(type, CONSTRUCTOR).asType(GET));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " has no public no-args constructor", e);
+        }
+    }
+
+    /**
+     * Returns a handle creating a constructor reference of {@code type}, or {@code null} if the constructor cannot be
+     * bound from here, e.g. because {@code type} is in a module this one does not read.
+     */
+    private static MethodHandle factory(Class<?> type) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get", SUPPLIER, GET,
+                lookup.findConstructor(type, CONSTRUCTOR), MethodType.methodType(type));
+            return site.getTarget();
+        } catch (LambdaConversionException | NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, ProviderSuppliers.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> RuntimeException rethrow(Throwable t) throws E {
+        throw (E) t;
+    }
+
+    private static final class HandleSupplier implements Supplier<Object> {
+        private final MethodHandle constructor;
+
+        private HandleSupplier(MethodHandle constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public Object get() {
+            try {
+                return constructor.invokeExact();
+            } catch (Throwable t) {
+                throw ProviderSuppliers.<RuntimeException>rethrow(t);
+            }
+        }
+    }
+}
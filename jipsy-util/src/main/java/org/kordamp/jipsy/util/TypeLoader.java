@@ -17,66 +17,652 @@
  */
 package org.kordamp.jipsy.util;
 
+import org.kordamp.jipsy.format.IndexReader;
+import org.kordamp.jipsy.format.ProviderAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Scanner;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import static java.util.Objects.requireNonNull;
 
 /**
+ * Index files are read with {@link IndexReader}: processors receive each entry without surrounding whitespace or
+ * trailing comment, blank and comment lines are skipped.
+ * <p>
+ * The static methods read the index files on every call. A {@code TypeLoader} instance caches the entries it reads
+ * per class loader and resource, so that repeated lookups of the same type skip {@code getResources} and parsing.
+ * Class loaders are only weakly referenced by the cache, and instances may be used concurrently.
+ * <p>
+ * The overloads taking an {@code Executor}, and instances created with one, read and parse the resources found on
+ * the classpath in parallel, e.g. on {@code ForkJoinPool.commonPool()}, on virtual threads or on an executor supplied
+ * by the caller. Processors are still called on the calling thread, in classpath order. The calling thread waits for
+ * the tasks it forked, so a bounded executor could be starved if it were one of the executor's own threads: reads
+ * are done sequentially instead when the caller runs on the {@code ForkJoinPool} given as executor, or within a
+ * task forked by this class. Other executors cannot tell whether the caller is one of their threads; do not use
+ * them from within their own tasks.
+ * <p>
+ * The {@code entriesAsync} methods start lookups in the background and return {@code CompletableFuture}s, so that
+ * discovery for many types can overlap with other startup work while sharing the instance's cache.
+ *
  * @author Andres Almiray
  */
 public class TypeLoader {
     private static final Logger LOG = LoggerFactory.getLogger(TypeLoader.class);
-    private static final String HASH = "#";
+    private static final String META_INF_TYPES = "META-INF/types";
+    // set while a thread runs a task forked by this class
+    private static final ThreadLocal<Boolean> FORKED = new ThreadLocal<>();
+
+    // resource name -> cached or in-flight entries, per class loader; only strings so that no class loader is referenced
+    private final ClassLoaderCache<ConcurrentMap<String, CompletableFuture<List<String>>>> cache = new ClassLoaderCache<>();
+    private final Executor executor;
 
-    private TypeLoader() {
-        // prevent instantiation
+    public TypeLoader() {
+        this.executor = null;
     }
 
-    public static boolean load(ClassLoader classLoader, Class<?> type, LineProcessor processor) {
-        return load(classLoader, "META-INF/types", type, processor);
+    /**
+     * Creates a {@code TypeLoader} that reads resources in parallel on {@code executor}. Unless it is a
+     * {@code ForkJoinPool}, synchronous lookups must not be made from tasks of {@code executor}, see the class
+     * documentation.
+     */
+    public TypeLoader(Executor executor) {
+        this.executor = requireNonNull(executor, "Argument 'executor' must not be null");
+    }
+
+    /**
+     * Returns the entries listed for {@code type} in {@code META-INF/types}, reading them on first use.
+     */
+    public List<String> entries(ClassLoader classLoader, Class<?> type) {
+        return entries(classLoader, META_INF_TYPES, type);
+    }
+
+    /**
+     * Returns the entries listed for {@code type} below {@code path}, reading them on first use. Resources that
+     * cannot be listed yield an empty list, which is not cached.
+     */
+    public List<String> entries(ClassLoader classLoader, String path, Class<?> type) {
+        List<String> entries = join(lookup(classLoader, path, type, null));
+        return entries != null ? entries : Collections.<String>emptyList();
+    }
+
+    /**
+     * Asynchronous variant of {@link #entries(ClassLoader, Class)}.
+     */
+    public CompletableFuture<List<String>> entriesAsync(ClassLoader classLoader, Class<?> type) {
+        return entriesAsync(classLoader, META_INF_TYPES, type);
+    }
+
+    /**
+     * Starts reading the entries listed for {@code type} below {@code path} in the background, on this instance's
+     * executor or on {@code ForkJoinPool.commonPool()}. Results are shared with the synchronous methods through the
+     * cache: a lookup that is already cached or in flight is not read again.
+     */
+    public CompletableFuture<List<String>> entriesAsync(ClassLoader classLoader, String path, Class<?> type) {
+        return lookup(classLoader, path, type, executor != null ? executor : ForkJoinPool.commonPool())
+            .thenApply(TypeLoader.<String>orEmpty());
+    }
+
+    /**
+     * Starts reading the entries of all {@code types} below {@code path} in the background, see
+     * {@link #entriesAsync(ClassLoader, String, Class)}. The types that are neither cached nor in flight are read
+     * together in a single pass over the classpath with {@link #loadAll(ClassLoader, String, Collection, LineProcessor)},
+     * whose results are cached for each of them.
+     *
+     * @return a future per type, in the iteration order of {@code types}
+     */
+    public Map<Class<?>, CompletableFuture<List<String>>> entriesAsync(final ClassLoader classLoader, final String path, Collection<? extends Class<?>> types) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        requireNonNull(types, "Argument 'types' must not be null");
+        final ConcurrentMap<String, CompletableFuture<List<String>>> owner = cached(classLoader);
+
+        Map<Class<?>, CompletableFuture<List<String>>> futures = new LinkedHashMap<>();
+        final Map<Class<?>, CompletableFuture<List<String>>> created = new LinkedHashMap<>();
+        for (Class<?> type : types) {
+            requireNonNull(type, "Argument 'types' must not contain null");
+            if (futures.containsKey(type)) { continue; }
+            String resourceName = resourceName(path, type);
+            CompletableFuture<List<String>> entries = owner.get(resourceName);
+            if (entries == null) {
+                CompletableFuture<List<String>> future = new CompletableFuture<>();
+                entries = owner.putIfAbsent(resourceName, future);
+                if (entries == null) {
+                    created.put(type, future);
+                    entries = future;
+                }
+            }
+            futures.put(type, entries.thenApply(TypeLoader.<String>orEmpty()));
+        }
+
+        if (!created.isEmpty()) {
+            try {
+                (executor != null ? executor : ForkJoinPool.commonPool()).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        readAll(owner, created, classLoader, path);
+                    }
+                });
+            } catch (RuntimeException e) {
+                fail(owner, created, path, e);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Cached variant of {@link #load(ClassLoader, Class, LineProcessor)}.
+     */
+    public boolean process(ClassLoader classLoader, Class<?> type, LineProcessor processor) {
+        return process(classLoader, META_INF_TYPES, type, processor);
+    }
+
+    /**
+     * Cached variant of {@link #load(ClassLoader, String, Class, LineProcessor)}.
+     */
+    public boolean process(ClassLoader classLoader, String path, Class<?> type, LineProcessor processor) {
+        requireNonNull(processor, "Argument 'processor' must not be null");
+        List<String> entries = join(lookup(classLoader, path, type, null));
+        if (entries == null) { return false; }
+
+        for (String entry : entries) {
+            processor.process(classLoader, type, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Drops everything cached for {@code classLoader}.
+     */
+    public void invalidate(ClassLoader classLoader) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        cache.remove(classLoader);
     }
 
-    public static boolean load(ClassLoader classLoader, String path, Class<?> type, LineProcessor processor) {
+    /**
+     * Drops the entries cached for {@code type} below {@code path} in {@code classLoader}.
+     */
+    public void invalidate(ClassLoader classLoader, String path, Class<?> type) {
         requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        ConcurrentMap<String, CompletableFuture<List<String>>> entries = cache.get(classLoader);
+        if (entries != null) {
+            entries.remove(resourceName(path, type));
+        }
+    }
+
+    /**
+     * Drops everything cached, including the entry names kept for jar files, which are shared by all instances.
+     */
+    public void invalidateAll() {
+        cache.clear();
+        JarIndex.clear();
+    }
+
+    /**
+     * Returns the cached or in-flight read of a resource, starting it if there is none: on {@code async} if given,
+     * on the calling thread otherwise. The future yields {@code null} if the resources could not be listed, in which
+     * case it is not kept in the cache.
+     */
+    private CompletableFuture<List<String>> lookup(final ClassLoader classLoader, final String path, final Class<?> type, Executor async) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        final String resourceName = resourceName(path, type);
+        ConcurrentMap<String, CompletableFuture<List<String>>> cached = cached(classLoader);
+
+        CompletableFuture<List<String>> entries = cached.get(resourceName);
+        if (entries != null) { return entries; }
+
+        final CompletableFuture<List<String>> created = new CompletableFuture<>();
+        entries = cached.putIfAbsent(resourceName, created);
+        if (entries != null) { return entries; }
+
+        final ConcurrentMap<String, CompletableFuture<List<String>>> owner = cached;
+        if (async == null) {
+            read(owner, resourceName, created, classLoader, path, type, executor != null && canFork(executor) ? executor : null);
+        } else {
+            try {
+                async.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // sequential, so that tasks never wait for other tasks of the same executor
+                        read(owner, resourceName, created, classLoader, path, type, null);
+                    }
+                });
+            } catch (RuntimeException e) {
+                owner.remove(resourceName, created);
+                created.completeExceptionally(e);
+            }
+        }
+        return created;
+    }
+
+    private ConcurrentMap<String, CompletableFuture<List<String>>> cached(ClassLoader classLoader) {
+        ConcurrentMap<String, CompletableFuture<List<String>>> cached = cache.get(classLoader);
+        if (cached == null) {
+            cached = cache.putIfAbsent(classLoader, new ConcurrentHashMap<String, CompletableFuture<List<String>>>());
+        }
+        return cached;
+    }
+
+    private static void readAll(ConcurrentMap<String, CompletableFuture<List<String>>> owner,
+                                Map<Class<?>, CompletableFuture<List<String>>> futures, ClassLoader classLoader,
+                                String path) {
+        try {
+            final Map<Class<?>, List<String>> read = new LinkedHashMap<>();
+            for (Class<?> type : futures.keySet()) {
+                read.put(type, new ArrayList<String>());
+            }
+            boolean found = loadAll(classLoader, path, futures.keySet(), new LineProcessor() {
+                @Override
+                public void process(ClassLoader classLoader, Class<?> type, String line) {
+                    read.get(type).add(line);
+                }
+            });
+            for (Map.Entry<Class<?>, CompletableFuture<List<String>>> future : futures.entrySet()) {
+                if (!found) {
+                    owner.remove(resourceName(path, future.getKey()), future.getValue());
+                    future.getValue().complete(null);
+                } else {
+                    future.getValue().complete(Collections.unmodifiableList(read.get(future.getKey())));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            fail(owner, futures, path, e);
+        }
+    }
+
+    private static void fail(ConcurrentMap<String, CompletableFuture<List<String>>> owner,
+                             Map<Class<?>, CompletableFuture<List<String>>> futures, String path, Throwable t) {
+        for (Map.Entry<Class<?>, CompletableFuture<List<String>>> future : futures.entrySet()) {
+            owner.remove(resourceName(path, future.getKey()), future.getValue());
+            future.getValue().completeExceptionally(t);
+        }
+    }
+
+    private static <T> Function<List<T>, List<T>> orEmpty() {
+        return new Function<List<T>, List<T>>() {
+            @Override
+            public List<T> apply(List<T> entries) {
+                return entries != null ? entries : Collections.<T>emptyList();
+            }
+        };
+    }
+
+    private static void read(ConcurrentMap<String, CompletableFuture<List<String>>> owner, String resourceName,
+                             CompletableFuture<List<String>> future, ClassLoader classLoader, String path,
+                             Class<?> type, Executor executor) {
+        try {
+            final List<String> read = new ArrayList<>();
+            boolean found;
+            if (executor != null) {
+                found = load(classLoader, path, type, new LineProcessor() {
+                    @Override
+                    public void process(ClassLoader classLoader, Class<?> type, String line) {
+                        read.add(line);
+                    }
+                }, executor);
+            } else {
+                found = loadSequences(classLoader, path, type, new LineSequenceProcessor() {
+                    @Override
+                    public void process(ClassLoader classLoader, Class<?> type, CharSequence line) {
+                        read.add(line.toString());
+                    }
+                });
+            }
+            if (!found) {
+                owner.remove(resourceName, future);
+                future.complete(null);
+            } else {
+                future.complete(Collections.unmodifiableList(read));
+            }
+        } catch (RuntimeException | Error e) {
+            owner.remove(resourceName, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static String resourceName(String path, Class<?> type) {
         requireNonBlank(path, "Argument 'path' must not be blank");
         requireNonNull(type, "Argument 'type' must not be null");
-        requireNonNull(processor, "Argument 'processor' must not be null");
         // "The name of a resource is a /-separated path name that identifies the resource."
+        return (path.endsWith("/") ? path : path + "/") + type.getName();
+    }
+
+    public static boolean load(ClassLoader classLoader, Class<?> type, LineProcessor processor) {
+        return load(classLoader, META_INF_TYPES, type, processor);
+    }
+
+    public static boolean load(ClassLoader classLoader, String path, Class<?> type, final LineProcessor processor) {
+        requireNonNull(processor, "Argument 'processor' must not be null");
+        return loadSequences(classLoader, path, type, new LineSequenceProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, Class<?> type, CharSequence line) {
+                processor.process(classLoader, type, line.toString());
+            }
+        });
+    }
+
+    /**
+     * Like {@link #load(ClassLoader, String, Class, LineProcessor)}, reading and parsing every resource found in a
+     * separate task on {@code executor}. {@code processor} is called on the calling thread, in classpath order.
+     * Must not be called from a task of {@code executor} unless it is a {@code ForkJoinPool}, see the class
+     * documentation.
+     */
+    public static boolean load(ClassLoader classLoader, String path, final Class<?> type, LineProcessor processor, Executor executor) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        String resourceName = resourceName(path, type);
+        requireNonNull(processor, "Argument 'processor' must not be null");
+        requireNonNull(executor, "Argument 'executor' must not be null");
+        if (!canFork(executor)) {
+            return load(classLoader, path, type, processor);
+        }
+
+        Enumeration<URL> urls;
+
+        try {
+            urls = classLoader.getResources(resourceName);
+        } catch (IOException ioe) {
+            LOG.error(ioe.getClass().getName() + " error loading resources of type \"" + type.getName() + "\" from \"" + path + "\".");
+            return false;
+        }
+
+        if (urls == null) { return false; }
+
+        List<CompletableFuture<List<String>>> reads = new ArrayList<>();
+        while (urls.hasMoreElements()) {
+            final URL url = urls.nextElement();
+            reads.add(CompletableFuture.supplyAsync(forked(new Supplier<List<String>>() {
+                @Override
+                public List<String> get() {
+                    LOG.debug("Reading {} definitions from {}", type.getName(), url);
+                    List<String> entries = new ArrayList<>();
+                    try (InputStream in = url.openStream()) {
+                        new IndexReader().read(in, collector(entries));
+                    } catch (IOException e) {
+                        LOG.warn("Could not load " + type.getName() + " definitions from " + url, e);
+                    }
+                    return entries;
+                }
+            }), executor));
+        }
+
+        for (CompletableFuture<List<String>> read : reads) {
+            for (String entry : join(read)) {
+                processor.process(classLoader, type, entry);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Loads the entries of all {@code types} in {@code META-INF/types} in a single pass over the classpath.
+     *
+     * @see #loadAll(ClassLoader, String, Collection, LineProcessor)
+     */
+    public static boolean loadAll(ClassLoader classLoader, Collection<? extends Class<?>> types, LineProcessor processor) {
+        return loadAll(classLoader, META_INF_TYPES, types, processor);
+    }
+
+    /**
+     * Loads the entries of all {@code types} below {@code path} in a single pass over the classpath. Rather than
+     * looking up every type with {@code getResources}, the classpath roots of {@code classLoader} are listed once:
+     * the {@code path} directory of every directory root is listed once, and every jar is searched through its cached
+     * {@link JarIndex}, following the {@code Class-Path} of its manifest. Files are handed to their type by name, and
+     * jars holding none of them are not opened again.
+     * <p>
+     * Roots can be listed for {@code URLClassLoader}s and the application class loader, and their parents. For other
+     * class loaders, which may find resources anywhere, every type is looked up with {@code getResources} instead.
+     * <p>
+     * {@code processor} receives the entries type by type, in the iteration order of {@code types}, each type's
+     * entries in classpath order without duplicates.
+     */
+    public static boolean loadAll(ClassLoader classLoader, String path, Collection<? extends Class<?>> types, LineProcessor processor) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        requireNonBlank(path, "Argument 'path' must not be blank");
+        requireNonNull(types, "Argument 'types' must not be null");
+        requireNonNull(processor, "Argument 'processor' must not be null");
         String normalizedPath = path.endsWith("/") ? path : path + "/";
 
+        Map<String, Class<?>> typesByName = new LinkedHashMap<>();
+        Map<Class<?>, Set<String>> entriesByType = new LinkedHashMap<>();
+        for (Class<?> type : types) {
+            requireNonNull(type, "Argument 'types' must not contain null");
+            typesByName.put(type.getName(), type);
+            entriesByType.put(type, new LinkedHashSet<String>());
+        }
+
+        List<File> roots = classpathRoots(classLoader);
+        if (roots == null) {
+            for (Class<?> type : typesByName.values()) {
+                final Set<String> entries = entriesByType.get(type);
+                boolean found = loadSequences(classLoader, normalizedPath, type, new LineSequenceProcessor() {
+                    @Override
+                    public void process(ClassLoader classLoader, Class<?> type, CharSequence line) {
+                        entries.add(line.toString());
+                    }
+                });
+                if (!found) { return false; }
+            }
+        } else {
+            IndexReader reader = new IndexReader();
+            for (File root : roots) {
+                handleRoot(root, normalizedPath, typesByName, entriesByType, reader);
+            }
+        }
+
+        for (Map.Entry<Class<?>, Set<String>> entries : entriesByType.entrySet()) {
+            for (String entry : entries.getValue()) {
+                processor.process(classLoader, entries.getKey(), entry);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the directories and jars {@code classLoader} finds resources in, in search order, or {@code null} if
+     * they cannot be told.
+     */
+    static List<File> classpathRoots(ClassLoader classLoader) {
+        LinkedList<ClassLoader> chain = new LinkedList<>();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            chain.addFirst(loader);
+        }
+
+        ClassLoader system;
+        try {
+            system = ClassLoader.getSystemClassLoader();
+        } catch (SecurityException | IllegalStateException e) {
+            system = null;
+        }
+
+        Set<File> roots = new LinkedHashSet<>();
+        for (ClassLoader loader : chain) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    if (!"file".equals(url.getProtocol())) { return null; }
+                    try {
+                        addRoot(roots, new File(url.toURI()));
+                    } catch (URISyntaxException | IllegalArgumentException e) {
+                        return null;
+                    }
+                }
+            } else if (loader == system) {
+                for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+                    if (!entry.isEmpty()) {
+                        addRoot(roots, new File(entry));
+                    }
+                }
+            } else if (system == null || loader != system.getParent()) {
+                // the platform class loader only serves the JDK's modules
+                return null;
+            }
+        }
+        return new ArrayList<>(roots);
+    }
+
+    private static void addRoot(Set<File> roots, File root) {
+        root = root.getAbsoluteFile();
+        if (!roots.add(root) || !root.isFile()) { return; }
+
+        // like URLClassLoader, search the jars named by the manifest right after the jar
+        try {
+            URL base = root.toURI().toURL();
+            for (String entry : JarIndex.of(root).classPath()) {
+                URL url = new URL(base, entry);
+                if ("file".equals(url.getProtocol())) {
+                    addRoot(roots, new File(url.toURI()));
+                }
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            LOG.debug("Could not read the manifest class path of " + root, e);
+        }
+    }
+
+    private static void handleRoot(File root, String path, Map<String, Class<?>> typesByName, Map<Class<?>, Set<String>> entriesByType, IndexReader reader) {
+        if (root.isDirectory()) {
+            File[] files = new File(root, path).listFiles();
+            if (files == null) { return; }
+            for (File file : files) {
+                Class<?> type = typesByName.get(file.getName());
+                if (type == null || !file.isFile()) { continue; }
+                LOG.debug("Reading {} definitions from {}", type.getName(), file);
+                try (InputStream in = new FileInputStream(file)) {
+                    reader.read(in, collector(entriesByType.get(type)));
+                } catch (IOException e) {
+                    LOG.warn("Could not load " + type.getName() + " definitions from " + file.getAbsolutePath(), e);
+                }
+            }
+        } else if (root.isFile()) {
+            try {
+                List<String> names = new ArrayList<>();
+                for (String name : JarIndex.of(root).namesStartingWith(path)) {
+                    if (typesByName.containsKey(name.substring(path.length()))) {
+                        names.add(name);
+                    }
+                }
+                if (names.isEmpty()) { return; }
+
+                try (JarFile jar = new JarFile(root)) {
+                    for (String name : names) {
+                        Class<?> type = typesByName.get(name.substring(path.length()));
+                        JarEntry jarEntry = jar.getJarEntry(name);
+                        if (jarEntry == null) { continue; }
+                        LOG.debug("Reading {} definitions from {}!/{}", type.getName(), root, name);
+                        try (InputStream in = jar.getInputStream(jarEntry)) {
+                            reader.read(in, collector(entriesByType.get(type)));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("An error occurred while loading resources from " + root, e);
+            }
+        }
+    }
+
+    /**
+     * Returns a lazy stream of the entries listed for {@code type} in {@code META-INF/types}.
+     *
+     * @see #stream(ClassLoader, String, Class)
+     */
+    public static Stream<IndexEntry> stream(ClassLoader classLoader, Class<?> type) {
+        return stream(classLoader, META_INF_TYPES, type);
+    }
+
+    /**
+     * Returns a lazy stream of the entries listed for {@code type} below {@code path}, in classpath order. Resources
+     * are looked up when the stream is first pulled, and each one is only opened once the entries before it have been
+     * consumed. A short-circuiting operation such as {@code findFirst} therefore reads as few files as possible. Every
+     * file is closed as soon as it has been read, so nothing stays open when the stream is abandoned.
+     * <p>
+     * Entries carry the attributes given to their providers, so that they can be selected before any class is loaded:
+     * <pre>
+     * TypeLoader.stream(classLoader, "META-INF/services", Calculator.class)
+     *     .filter(e -&gt; e.getAttributes().hasQualifier("fast"))
+     *     .sorted(IndexEntry.BY_PRIORITY)
+     *     .findFirst();
+     * </pre>
+     */
+    public static Stream<IndexEntry> stream(ClassLoader classLoader, String path, Class<?> type) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        return StreamSupport.stream(new IndexEntrySpliterator(classLoader, resourceName(path, type), type), false);
+    }
+
+    /**
+     * Like {@link #load(ClassLoader, Class, LineProcessor)}, handing lines over as a reused {@code CharSequence}
+     * that is only valid during the callback. Avoids creating a {@code String} per line.
+     */
+    public static boolean loadSequences(ClassLoader classLoader, Class<?> type, LineSequenceProcessor processor) {
+        return loadSequences(classLoader, META_INF_TYPES, type, processor);
+    }
+
+    /**
+     * Like {@link #load(ClassLoader, String, Class, LineProcessor)}, handing lines over as a reused
+     * {@code CharSequence} that is only valid during the callback. Avoids creating a {@code String} per line.
+     */
+    public static boolean loadSequences(final ClassLoader classLoader, String path, final Class<?> type, final LineSequenceProcessor processor) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        String resourceName = resourceName(path, type);
+        requireNonNull(processor, "Argument 'processor' must not be null");
+
         Enumeration<URL> urls;
 
         try {
-            urls = classLoader.getResources(normalizedPath + type.getName());
+            urls = classLoader.getResources(resourceName);
         } catch (IOException ioe) {
-            LOG.error(ioe.getClass().getName() + " error loading resources of type \"" + type.getName() + "\" from \"" + normalizedPath + "\".");
+            LOG.error(ioe.getClass().getName() + " error loading resources of type \"" + type.getName() + "\" from \"" + path + "\".");
             return false;
         }
 
         if (urls == null) { return false; }
 
+        IndexReader reader = new IndexReader();
+        IndexReader.EntryHandler handler = new IndexReader.EntryHandler() {
+            @Override
+            public void entry(CharSequence line) {
+                processor.process(classLoader, type, line);
+            }
+        };
         while (urls.hasMoreElements()) {
             URL url = urls.nextElement();
             LOG.debug("Reading {} definitions from {}", type.getName(), url);
 
-            try (Scanner scanner = new Scanner(url.openStream())) {
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    if (line.startsWith(HASH) || isBlank(line)) { continue; }
-                    processor.process(classLoader, type, line);
-                }
+            try (InputStream in = url.openStream()) {
+                reader.read(in, handler);
             } catch (IOException e) {
                 LOG.warn("Could not load " + type.getName() + " definitions from " + url, e);
             }
@@ -85,11 +671,38 @@ public class TypeLoader {
         return true;
     }
 
-    public static boolean load(ClassLoader classLoader, String path, PathFilter pathFilter, ResourceProcessor processor) {
+    /**
+     * Hands the lines of every resource below {@code path} accepted by {@code pathFilter} to {@code processor}.
+     * Resources are read as UTF-8 and may hold any content: lines are passed on as they are, only blank lines and
+     * lines starting with {@code #} are skipped.
+     * Jar files are not walked entry by entry: their entry names are kept in an index per jar file, rebuilt when the
+     * jar's size or modification time changes, and matching entries are visited in name order.
+     */
+    public static boolean load(ClassLoader classLoader, String path, PathFilter pathFilter, final ResourceProcessor processor) {
+        requireNonNull(processor, "Argument 'processor' must not be null");
+        return loadSequences(classLoader, path, pathFilter, new ResourceSequenceProcessor() {
+            @Override
+            public void process(ClassLoader classLoader, CharSequence line) {
+                processor.process(classLoader, line.toString());
+            }
+        });
+    }
+
+    /**
+     * Like {@link #load(ClassLoader, String, PathFilter, ResourceProcessor)}, reading and parsing every directory or
+     * jar found in a separate task on {@code executor}. {@code processor} is called on the calling thread, in
+     * classpath order. Must not be called from a task of {@code executor} unless it is a {@code ForkJoinPool}, see
+     * the class documentation.
+     */
+    public static boolean load(ClassLoader classLoader, final String path, final PathFilter pathFilter, ResourceProcessor processor, Executor executor) {
         requireNonNull(classLoader, "Argument 'classLoader' must not be null");
         requireNonBlank(path, "Argument 'path' must not be blank");
         requireNonNull(pathFilter, "Argument 'pathFilter' must not be blank");
         requireNonNull(processor, "Argument 'processor' must not be null");
+        requireNonNull(executor, "Argument 'executor' must not be null");
+        if (!canFork(executor)) {
+            return load(classLoader, path, pathFilter, processor);
+        }
 
         Enumeration<URL> urls;
 
@@ -102,35 +715,131 @@ public class TypeLoader {
 
         if (urls == null) { return false; }
 
+        List<CompletableFuture<List<String>>> reads = new ArrayList<>();
         while (urls.hasMoreElements()) {
-            URL url = urls.nextElement();
-            LOG.debug("Reading definitions from " + url);
-            switch (url.getProtocol()) {
-                case "file":
-                    handleFileResource(url, classLoader, path, pathFilter, processor);
-                    break;
-                case "jar":
-                    handleJarResource(url, classLoader, path, pathFilter, processor);
-                    break;
-                default:
-                    LOG.warn("Could not load definitions from " + url);
+            final URL url = urls.nextElement();
+            reads.add(CompletableFuture.supplyAsync(forked(new Supplier<List<String>>() {
+                @Override
+                public List<String> get() {
+                    List<String> entries = new ArrayList<>();
+                    handleResource(url, path, pathFilter, new IndexReader(), collector(entries));
+                    return entries;
+                }
+            }), executor));
+        }
+
+        for (CompletableFuture<List<String>> read : reads) {
+            for (String entry : join(read)) {
+                processor.process(classLoader, entry);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Like {@link #load(ClassLoader, String, PathFilter, ResourceProcessor)}, handing lines over as a reused
+     * {@code CharSequence} that is only valid during the callback. Avoids creating a {@code String} per line.
+     */
+    public static boolean loadSequences(final ClassLoader classLoader, String path, PathFilter pathFilter, final ResourceSequenceProcessor processor) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        requireNonBlank(path, "Argument 'path' must not be blank");
+        requireNonNull(pathFilter, "Argument 'pathFilter' must not be blank");
+        requireNonNull(processor, "Argument 'processor' must not be null");
+
+        Enumeration<URL> urls;
+
+        try {
+            urls = classLoader.getResources(path);
+        } catch (IOException ioe) {
+            LOG.debug(ioe.getClass().getName() + " error loading resources from \"" + path + "\".");
+            return false;
+        }
+
+        if (urls == null) { return false; }
+
+        IndexReader reader = new IndexReader();
+        IndexReader.EntryHandler handler = new IndexReader.EntryHandler() {
+            @Override
+            public void entry(CharSequence line) {
+                processor.process(classLoader, line);
             }
+        };
+        while (urls.hasMoreElements()) {
+            handleResource(urls.nextElement(), path, pathFilter, reader, handler);
         }
 
         return true;
     }
 
-    private static void handleFileResource(URL url, ClassLoader classLoader, String path, PathFilter pathFilter, ResourceProcessor processor) {
+    private static void handleResource(URL url, String path, PathFilter pathFilter, IndexReader reader, IndexReader.EntryHandler handler) {
+        LOG.debug("Reading definitions from " + url);
+        switch (url.getProtocol()) {
+            case "file":
+                handleFileResource(url, pathFilter, reader, handler);
+                break;
+            case "jar":
+                handleJarResource(url, path, pathFilter, reader, handler);
+                break;
+            default:
+                LOG.warn("Could not load definitions from " + url);
+        }
+    }
+
+    /**
+     * Whether the calling thread may fork tasks to {@code executor} and wait for them, see the class documentation.
+     */
+    private static boolean canFork(Executor executor) {
+        if (FORKED.get() != null) {
+            return false;
+        }
+        return !(executor instanceof ForkJoinPool) || ForkJoinTask.getPool() != executor;
+    }
+
+    private static <T> Supplier<T> forked(final Supplier<T> task) {
+        return new Supplier<T>() {
+            @Override
+            public T get() {
+                FORKED.set(Boolean.TRUE);
+                try {
+                    return task.get();
+                } finally {
+                    FORKED.remove();
+                }
+            }
+        };
+    }
+
+    private static IndexReader.EntryHandler collector(final Collection<String> entries) {
+        return new IndexReader.EntryHandler() {
+            @Override
+            public void entry(CharSequence entry) {
+                entries.add(entry.toString());
+            }
+        };
+    }
+
+    private static List<String> join(CompletableFuture<List<String>> read) {
+        try {
+            return read.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void handleFileResource(URL url, PathFilter pathFilter, IndexReader reader, IndexReader.EntryHandler handler) {
         try {
             File file = new File(url.toURI());
             for (File entry : file.listFiles()) {
                 if (pathFilter.accept(entry.getName())) {
-                    try (Scanner scanner = new Scanner(entry)) {
-                        while (scanner.hasNextLine()) {
-                            String line = scanner.nextLine();
-                            if (line.startsWith(HASH) || isBlank(line)) { continue; }
-                            processor.process(classLoader, line);
-                        }
+                    try (InputStream in = new FileInputStream(entry)) {
+                        reader.readLines(in, handler);
                     } catch (IOException e) {
                         LOG.warn("An error occurred while loading resources from " + entry.getAbsolutePath(), e);
                     }
@@ -141,22 +850,18 @@ public class TypeLoader {
         }
     }
 
-    private static void handleJarResource(URL url, ClassLoader classLoader, String path, PathFilter pathFilter, ResourceProcessor processor) {
+    private static void handleJarResource(URL url, String path, PathFilter pathFilter, IndexReader reader, IndexReader.EntryHandler handler) {
         try {
             URLConnection urlConnection = url.openConnection();
             if (urlConnection instanceof JarURLConnection) {
                 JarURLConnection jarURLConnection = (JarURLConnection) urlConnection;
                 JarFile jar = jarURLConnection.getJarFile();
-                Enumeration<JarEntry> entries = jar.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry jarEntry = entries.nextElement();
-                    if (jarEntry.getName().startsWith(path) && pathFilter.accept(jarEntry.getName())) {
-                        try (Scanner scanner = new Scanner(jar.getInputStream(jarEntry))) {
-                            while (scanner.hasNextLine()) {
-                                String line = scanner.nextLine();
-                                if (line.startsWith(HASH) || isBlank(line)) { continue; }
-                                processor.process(classLoader, line);
-                            }
+                for (String name : namesStartingWith(jarURLConnection.getJarFileURL(), jar, path)) {
+                    if (pathFilter.accept(name)) {
+                        JarEntry jarEntry = jar.getJarEntry(name);
+                        if (jarEntry == null) { continue; }
+                        try (InputStream in = jar.getInputStream(jarEntry)) {
+                            reader.readLines(in, handler);
                         } catch (IOException e) {
                             LOG.warn("An error occurred while loading resources from " + jarEntry.getName(), e);
                         }
@@ -168,6 +873,92 @@ public class TypeLoader {
         }
     }
 
+    private static List<String> namesStartingWith(URL jarFileURL, JarFile jar, String path) {
+        if ("file".equals(jarFileURL.getProtocol())) {
+            try {
+                return JarIndex.of(new File(jarFileURL.toURI()), jar).namesStartingWith(path);
+            } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+                // not a plain file, scan below
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (name.startsWith(path)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static final class IndexEntrySpliterator extends Spliterators.AbstractSpliterator<IndexEntry> {
+        private final ClassLoader classLoader;
+        private final String resourceName;
+        private final Class<?> type;
+        private final IndexReader reader = new IndexReader();
+        private final List<String> entries = new ArrayList<>();
+        private final List<ProviderAttributes> attributes = new ArrayList<>();
+        private final IndexReader.AttributedEntryHandler collector = new IndexReader.AttributedEntryHandler() {
+            @Override
+            public void entry(CharSequence entry, CharSequence attributes) {
+                entries.add(entry.toString());
+                IndexEntrySpliterator.this.attributes.add(ProviderAttributes.parse(attributes));
+            }
+        };
+        private Enumeration<URL> urls;
+        private URL url;
+        private int next;
+
+        private IndexEntrySpliterator(ClassLoader classLoader, String resourceName, Class<?> type) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.classLoader = classLoader;
+            this.resourceName = resourceName;
+            this.type = type;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super IndexEntry> action) {
+            while (next == entries.size()) {
+                if (!nextResource()) {
+                    return false;
+                }
+            }
+            action.accept(new IndexEntry(entries.get(next), url, attributes.get(next)));
+            next++;
+            return true;
+        }
+
+        private boolean nextResource() {
+            if (urls == null) {
+                try {
+                    urls = classLoader.getResources(resourceName);
+                } catch (IOException ioe) {
+                    LOG.error(ioe.getClass().getName() + " error loading resources of type \"" + type.getName() + "\" from \"" + resourceName + "\".");
+                }
+                if (urls == null) {
+                    urls = Collections.emptyEnumeration();
+                }
+            }
+            if (!urls.hasMoreElements()) {
+                return false;
+            }
+
+            url = urls.nextElement();
+            entries.clear();
+            attributes.clear();
+            next = 0;
+            LOG.debug("Reading {} definitions from {}", type.getName(), url);
+            try (InputStream in = url.openStream()) {
+                reader.read(in, collector);
+            } catch (IOException e) {
+                LOG.warn("Could not load " + type.getName() + " definitions from " + url, e);
+            }
+            return true;
+        }
+    }
+
     public interface PathFilter {
         boolean accept(String path);
     }
@@ -180,12 +971,26 @@ public class TypeLoader {
         void process(ClassLoader classLoader, String line);
     }
 
+    /**
+     * Receives lines as a reused {@code CharSequence}, only valid until {@code process} returns.
+     */
+    public interface LineSequenceProcessor {
+        void process(ClassLoader classLoader, Class<?> type, CharSequence line);
+    }
+
+    /**
+     * Receives lines as a reused {@code CharSequence}, only valid until {@code process} returns.
+     */
+    public interface ResourceSequenceProcessor {
+        void process(ClassLoader classLoader, CharSequence line);
+    }
+
     private static boolean isBlank(String str) {
         if (str == null || str.length() == 0) {
             return true;
         }
-        for (char c : str.toCharArray()) {
-            if (!Character.isWhitespace(c)) {
+        for (int i = 0; i < str.length(); i++) {
+            if (!Character.isWhitespace(str.charAt(i))) {
                 return false;
             }
         }